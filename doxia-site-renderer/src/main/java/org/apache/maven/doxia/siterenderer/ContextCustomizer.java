@@ -18,6 +18,9 @@
  */
 package org.apache.maven.doxia.siterenderer;
 
+import java.util.Collection;
+import java.util.Set;
+
 import org.apache.velocity.context.Context;
 
 /**
@@ -35,4 +38,61 @@ public interface ContextCustomizer {
      */
     void customizeContext(
             Context context, DocumentRenderingContext docRenderingContext, SiteRenderingContext siteRenderingContext);
+
+    /**
+     * Get the keys this customizer puts in the Velocity context. When known, the customizer is only applied, and
+     * prefetched, if the site template or the Velocity template of the document may read any of them: sites whose
+     * templates never use the values don't pay for computing them.
+     *
+     * @return the context keys put by {@link #customizeContext(Context, DocumentRenderingContext,
+     *         SiteRenderingContext)}, or {@code null} if unknown: the customizer is then always applied.
+     * @since 2.2.0
+     */
+    default Set<String> getContextKeys() {
+        return null;
+    }
+
+    /**
+     * Prepare the customization of the Velocity contexts of documents about to be rendered, before any of them is
+     * rendered. Implementations may start computing the values of all documents concurrently, for
+     * {@link #customizeContext(Context, DocumentRenderingContext, SiteRenderingContext)} to only look them up.
+     * Documents which output is up to date are not prefetched, and
+     * {@link #customizeContext(Context, DocumentRenderingContext, SiteRenderingContext)} may be called for documents
+     * that were never prefetched.
+     *
+     * @param docRenderingContexts the rendering contexts of the documents about to be rendered.
+     * @param siteRenderingContext the site rendering context for the site being rendered.
+     * @since 2.2.0
+     */
+    default void prefetch(
+            Collection<DocumentRenderingContext> docRenderingContexts, SiteRenderingContext siteRenderingContext) {
+        // nothing to prefetch by default
+    }
+
+    /**
+     * Prepare the customization of the Velocity contexts of a site, before the first document of the site is rendered:
+     * expensive setup, like opening a repository or warming a cache, is done once per site rendering instead of lazily
+     * per document. State needed by the next calls is kept in
+     * {@link SiteRenderingContext#computeSiteStateIfAbsent(Class, java.util.function.Supplier)}.
+     *
+     * @param siteRenderingContext the site rendering context for the site about to be rendered.
+     * @since 2.2.0
+     */
+    default void beforeSite(SiteRenderingContext siteRenderingContext) {
+        // no setup by default
+    }
+
+    /**
+     * Release the resources acquired for a site, once the site rendering context is released with
+     * {@link SiteRenderer#releaseContext(SiteRenderingContext)}, or once
+     * {@link SiteRenderer#render(Collection, SiteRenderingContext, java.io.File)} completes if the context was not
+     * opened with {@link SiteRenderer#openContext(SiteRenderingContext)} for a rendering in several passes. If
+     * documents of the site are rendered again, {@link #beforeSite(SiteRenderingContext)} is called again first.
+     *
+     * @param siteRenderingContext the site rendering context for the rendered site.
+     * @since 2.2.0
+     */
+    default void afterSite(SiteRenderingContext siteRenderingContext) {
+        // nothing to release by default
+    }
 }
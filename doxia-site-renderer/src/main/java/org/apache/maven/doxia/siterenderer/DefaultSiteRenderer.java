@@ -26,19 +26,23 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.Reader;
 import java.io.StringReader;
 import java.io.StringWriter;
 import java.io.Writer;
-import java.net.URL;
-import java.net.URLClassLoader;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Enumeration;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.LinkedList;
@@ -47,12 +51,23 @@ import java.util.Locale;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Properties;
+import java.util.Set;
 import java.util.TimeZone;
+import java.util.WeakHashMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipException;
 import java.util.zip.ZipFile;
 
+import com.google.inject.Injector;
 import org.apache.commons.lang3.ArrayUtils;
 import org.apache.commons.lang3.SystemUtils;
 import org.apache.maven.artifact.Artifact;
@@ -67,20 +82,20 @@ import org.apache.maven.doxia.parser.Parser;
 import org.apache.maven.doxia.parser.manager.ParserNotFoundException;
 import org.apache.maven.doxia.parser.module.ParserModule;
 import org.apache.maven.doxia.parser.module.ParserModuleManager;
+import org.apache.maven.doxia.sink.impl.SinkWrapperFactory;
 import org.apache.maven.doxia.site.SiteModel;
-import org.apache.maven.doxia.site.skin.ResourceCondition;
 import org.apache.maven.doxia.site.skin.SkinModel;
-import org.apache.maven.doxia.site.skin.io.xpp3.SkinXpp3Reader;
 import org.apache.maven.doxia.siterenderer.SiteRenderingContext.SiteDirectory;
 import org.apache.maven.doxia.siterenderer.sink.SiteRendererSink;
 import org.apache.maven.doxia.util.XmlValidator;
 import org.apache.velocity.Template;
-import org.apache.velocity.app.Velocity;
+import org.apache.velocity.VelocityContext;
 import org.apache.velocity.context.Context;
 import org.apache.velocity.exception.ParseErrorException;
 import org.apache.velocity.exception.ResourceNotFoundException;
 import org.apache.velocity.exception.VelocityException;
 import org.apache.velocity.tools.Scope;
+import org.apache.velocity.tools.ToolContext;
 import org.apache.velocity.tools.ToolManager;
 import org.apache.velocity.tools.config.ConfigurationUtils;
 import org.apache.velocity.tools.config.EasyFactoryConfiguration;
@@ -110,7 +125,6 @@ import org.codehaus.plexus.util.PathTool;
 import org.codehaus.plexus.util.ReaderFactory;
 import org.codehaus.plexus.util.StringUtils;
 import org.codehaus.plexus.util.WriterFactory;
-import org.codehaus.plexus.util.xml.pull.XmlPullParserException;
 import org.codehaus.plexus.velocity.VelocityComponent;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -146,7 +160,41 @@ public class DefaultSiteRenderer implements Renderer {
     @Inject
     private Map<String, ContextCustomizer> contextCustomizers;
 
-    private static final String SKIN_TEMPLATE_LOCATION = "META-INF/maven/site.vm";
+    @Inject
+    private Injector injector;
+
+    /** the sink wrapper factories registered automatically in every parser */
+    @Inject
+    private List<SinkWrapperFactory> sinkWrapperFactories;
+
+    /**
+     * The parser instances owned by the current rendering thread, only set for threads used by parallel rendering.
+     * Doxia parsers are stateful singletons, so every rendering thread needs its own instances.
+     */
+    private final ThreadLocal<Map<String, Parser>> threadParsers = new ThreadLocal<>();
+
+    /** skins shared by every context created for them, for every module and locale of the build */
+    private final SkinRegistry skinRegistry = new SkinRegistry();
+
+    /** compiled templates of Velocity processed documents */
+    private final DocumentTemplateCache documentTemplates = new DocumentTemplateCache();
+
+    /** context keys referenced by the compiled site and document templates */
+    private final Map<Template, TemplateReferences> templateReferences =
+            Collections.synchronizedMap(new WeakHashMap<>());
+
+    /**
+     * context keys of the site template whose values fall back to the values of other keys, put by context customizers,
+     * by site template key
+     */
+    private static final Map<String, String> FALLBACK_KEYS = new HashMap<>();
+
+    static {
+        FALLBACK_KEYS.put("authors", "scmModifiedAuthor");
+        FALLBACK_KEYS.put("documentDate", "scmModifiedDate");
+    }
+
+    static final String SKIN_TEMPLATE_LOCATION = "META-INF/maven/site.vm";
 
     private static final String TOOLS_LOCATION = "META-INF/maven/site-tools.xml";
 
@@ -367,58 +415,487 @@ public class DefaultSiteRenderer implements Renderer {
     public void render(
             Collection<DocumentRenderer> documents, SiteRenderingContext siteRenderingContext, File outputDirectory)
             throws RendererException, IOException {
+        RenderManifest manifest = siteRenderingContext.getRenderManifestDirectory() != null
+                ? RenderManifest.load(outputDirectory, siteRenderingContext, DOXIA_SITE_RENDERER_VERSION)
+                : null;
+        RenderStatistics statistics = siteRenderingContext.getRenderStatistics();
+        int writtenFiles = statistics.getWrittenFiles();
+        int unchangedFiles = statistics.getUnchangedFiles();
+        acquireSkin(siteRenderingContext);
+        try {
+            startSite(siteRenderingContext);
+            try {
+                Map<DocumentRenderer, String> modifiedDocuments =
+                        getModifiedDocuments(documents, siteRenderingContext, outputDirectory, manifest);
+                // only the documents about to be rendered are prefetched
+                prefetchContextCustomizations(modifiedDocuments.keySet(), siteRenderingContext);
+                int parallelism = siteRenderingContext.getParallelism();
+                if (parallelism > 1 && modifiedDocuments.size() > 1) {
+                    renderConcurrently(
+                            modifiedDocuments, siteRenderingContext, outputDirectory, manifest, parallelism);
+                } else {
+                    for (Map.Entry<DocumentRenderer, String> entry : modifiedDocuments.entrySet()) {
+                        renderModified(
+                                entry.getKey(), entry.getValue(), siteRenderingContext, outputDirectory, manifest);
+                    }
+                }
+            } finally {
+                if (manifest != null) {
+                    manifest.store();
+                }
+            }
+        } finally {
+            if (!siteRenderingContext.isOpened()) {
+                // the rendering of a context not opened for several passes is a whole site rendering: neither the
+                // resources of context customizers nor the skin class loader are kept
+                finishSite(siteRenderingContext);
+                releaseSkin(siteRenderingContext);
+            }
+        }
+
+        if (siteRenderingContext.isCompareBeforeWrite()) {
+            LOGGER.info(
+                    "{} files written, {} unchanged files not rewritten",
+                    statistics.getWrittenFiles() - writtenFiles,
+                    statistics.getUnchangedFiles() - unchangedFiles);
+        }
+
+        if (siteRenderingContext.isProfileTemplate()) {
+            LOGGER.info(
+                    "Site template profile for {} locale:{}{}",
+                    siteRenderingContext.getLocale(),
+                    SystemUtils.LINE_SEPARATOR,
+                    siteRenderingContext.getTemplateProfile());
+        }
+    }
+
+    /** {@inheritDoc} */
+    public void renderLocales(Map<SiteRenderingContext, File> outputDirectories) throws RendererException, IOException {
+        // contents shared by all locales, layered over the cache of each site rendering context
+        Map<String, ParsedDocumentContent> contents = new ConcurrentHashMap<>();
+
+        for (Map.Entry<SiteRenderingContext, File> entry : outputDirectories.entrySet()) {
+            SiteRenderingContext siteRenderingContext = entry.getKey();
+            DocumentContentCache cache = siteRenderingContext.getDocumentContentCache();
+            siteRenderingContext.setDocumentContentCache(new MemoryDocumentContentCache(contents, cache));
+            try {
+                render(locateDocumentFiles(siteRenderingContext).values(), siteRenderingContext, entry.getValue());
+            } finally {
+                siteRenderingContext.setDocumentContentCache(cache);
+            }
+        }
+    }
+
+    /**
+     * Notify the context customizers that the site rendering starts, once per site rendering context, before any
+     * document is rendered.
+     */
+    private void startSite(SiteRenderingContext siteRenderingContext) {
+        if (siteRenderingContext.isSiteStarted()) {
+            return;
+        }
+        synchronized (siteRenderingContext) {
+            if (siteRenderingContext.isSiteStarted()) {
+                return;
+            }
+            for (Map.Entry<String, ContextCustomizer> entry : contextCustomizers.entrySet()) {
+                try {
+                    entry.getValue().beforeSite(siteRenderingContext);
+                } catch (Exception e) {
+                    LOGGER.warn(
+                            "Velocity context customizer '" + entry.getKey() + "' threw an exception before the site"
+                                    + " rendering and will set up per document",
+                            e);
+                }
+            }
+            siteRenderingContext.setSiteStarted(true);
+        }
+    }
+
+    private void prefetchContextCustomizations(
+            Collection<DocumentRenderer> documents, SiteRenderingContext siteRenderingContext) {
+        if (contextCustomizers.isEmpty()) {
+            return;
+        }
+        List<DocumentRenderingContext> docRenderingContexts = new ArrayList<>();
+        List<TemplateReferences> references = new ArrayList<>();
+        references.add(getSiteTemplateReferences(siteRenderingContext));
         for (DocumentRenderer docRenderer : documents) {
             DocumentRenderingContext docRenderingContext = docRenderer.getRenderingContext();
+            if (docRenderingContext != null) {
+                docRenderingContexts.add(docRenderingContext);
+                if (docRenderingContext.getAttribute("velocity") != null) {
+                    references.add(getDocumentTemplateReferences(docRenderingContext, siteRenderingContext));
+                }
+            }
+        }
+        if (docRenderingContexts.isEmpty()) {
+            return;
+        }
 
-            File outputFile = new File(outputDirectory, docRenderer.getOutputName());
+        for (Map.Entry<String, ContextCustomizer> entry : contextCustomizers.entrySet()) {
+            ContextCustomizer customizer = entry.getValue();
+            if (references.stream().noneMatch(r -> isApplied(customizer, r))) {
+                LOGGER.debug("Velocity context customizer '" + entry.getKey() + "' unused by templates, skipped");
+                continue;
+            }
+            try {
+                LOGGER.debug("Prefetching Velocity context customizer '" + entry.getKey() + "'");
+                customizer.prefetch(docRenderingContexts, siteRenderingContext);
+            } catch (Exception e) {
+                LOGGER.warn(
+                        "Velocity context customizer '" + entry.getKey() + "' threw an exception while prefetching"
+                                + " and will only be applied per document",
+                        e);
+            }
+        }
+    }
 
-            File inputFile = new File(docRenderingContext.getBasedir(), docRenderingContext.getInputName());
+    /**
+     * Whether a context customizer needs to be applied for a template: customizers putting keys the template never
+     * reads, even through the values falling back to them, are skipped.
+     *
+     * @param customizer the context customizer
+     * @param references the context keys the template may read
+     * @return <code>true</code> if the customizer must be applied
+     */
+    private static boolean isApplied(ContextCustomizer customizer, TemplateReferences references) {
+        Set<String> keys = customizer.getContextKeys();
+        if (keys == null) {
+            return true;
+        }
+        Set<String> readKeys = new HashSet<>(keys);
+        for (Map.Entry<String, String> fallback : FALLBACK_KEYS.entrySet()) {
+            if (keys.contains(fallback.getValue())) {
+                readKeys.add(fallback.getKey());
+            }
+        }
+        return references.isAnyReferenced(readKeys);
+    }
 
-            boolean modified = !outputFile.exists()
-                    || (inputFile.lastModified() > outputFile.lastModified())
-                    || (siteRenderingContext.getSiteModel().getLastModified() > outputFile.lastModified());
+    /**
+     * Put a site template value, using the value of its {@link #FALLBACK_KEYS fallback key} (if available) if none.
+     */
+    private static void putWithFallback(Context context, String key, Object value) {
+        context.put(key, (value != null) ? value : context.get(FALLBACK_KEYS.get(key)));
+    }
 
-            if (modified || docRenderer.isOverwrite()) {
-                if (!outputFile.getParentFile().exists()) {
-                    outputFile.getParentFile().mkdirs();
+    private TemplateReferences getTemplateReferences(Template template) {
+        return templateReferences.computeIfAbsent(template, TemplateReferences::of);
+    }
+
+    /**
+     * Get the context keys the site template may read, loading the site template if not loaded yet.
+     */
+    private TemplateReferences getSiteTemplateReferences(SiteRenderingContext siteRenderingContext) {
+        if (siteRenderingContext.getTemplateName() == null) {
+            return TemplateReferences.UNKNOWN;
+        }
+        ClassLoader old = Thread.currentThread().getContextClassLoader();
+        if (siteRenderingContext.getTemplateClassLoader() != null) {
+            Thread.currentThread().setContextClassLoader(siteRenderingContext.getTemplateClassLoader());
+        }
+        try {
+            return getTemplateReferences(getSiteTemplate(siteRenderingContext));
+        } catch (RendererException | VelocityException e) {
+            // reported when merging documents into the site template, if any
+            LOGGER.debug("Site template not analyzed", e);
+            return TemplateReferences.UNKNOWN;
+        } finally {
+            Thread.currentThread().setContextClassLoader(old);
+        }
+    }
+
+    /**
+     * Get the context keys the Velocity template of a document may read.
+     */
+    private TemplateReferences getDocumentTemplateReferences(
+            DocumentRenderingContext docRenderingContext, SiteRenderingContext siteRenderingContext) {
+        File doc = new File(docRenderingContext.getBasedir(), docRenderingContext.getInputName());
+        try {
+            return getTemplateReferences(getDocumentTemplate(doc, siteRenderingContext));
+        } catch (IOException | VelocityException e) {
+            // reported when rendering the document
+            LOGGER.debug("Velocity template of " + docRenderingContext.getDoxiaSourcePath() + " not analyzed", e);
+            return TemplateReferences.UNKNOWN;
+        }
+    }
+
+    /**
+     * Render documents with a bounded number of threads. Documents rendered from a Doxia source are rendered
+     * by worker threads, all other documents (like reports) are rendered by the calling thread as they are not
+     * expected to be thread-safe. Contrary to sequential rendering, a failure does not stop the rendering of the
+     * remaining documents: all failures are reported at the end.
+     */
+    private void renderConcurrently(
+            Map<DocumentRenderer, String> documents,
+            SiteRenderingContext siteRenderingContext,
+            File outputDirectory,
+            RenderManifest manifest,
+            int parallelism)
+            throws RendererException, IOException {
+        LOGGER.debug("Rendering " + documents.size() + " documents with " + parallelism + " threads");
+
+        AtomicInteger threadCount = new AtomicInteger();
+        ThreadFactory threadFactory = runnable -> {
+            Thread thread = new Thread(
+                    () -> {
+                        threadParsers.set(new HashMap<>());
+                        runnable.run();
+                    },
+                    "doxia-site-renderer-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        // bounded queue: once full, the calling thread renders the document itself
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                parallelism,
+                parallelism,
+                0L,
+                TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(parallelism * 2),
+                threadFactory,
+                new ThreadPoolExecutor.CallerRunsPolicy());
+
+        Map<DocumentRenderer, Future<?>> futures = new LinkedHashMap<>();
+        Map<DocumentRenderer, Throwable> failures = new LinkedHashMap<>();
+        // the calling thread renders documents too, when the queue is full: it uses dedicated parsers as well
+        Map<String, Parser> callerParsers = threadParsers.get();
+        threadParsers.set(new HashMap<>());
+        try {
+            List<DocumentRenderer> callerDocuments = new ArrayList<>();
+            for (Map.Entry<DocumentRenderer, String> entry : documents.entrySet()) {
+                DocumentRenderer docRenderer = entry.getKey();
+                if (docRenderer instanceof DoxiaDocumentRenderer) {
+                    futures.put(docRenderer, executor.submit(() -> {
+                        renderModified(
+                                docRenderer, entry.getValue(), siteRenderingContext, outputDirectory, manifest);
+                        return null;
+                    }));
+                } else {
+                    callerDocuments.add(docRenderer);
                 }
+            }
 
-                if (LOGGER.isDebugEnabled()) {
-                    LOGGER.debug("Generating " + outputFile);
+            for (DocumentRenderer docRenderer : callerDocuments) {
+                try {
+                    renderModified(
+                            docRenderer, documents.get(docRenderer), siteRenderingContext, outputDirectory, manifest);
+                } catch (RendererException | IOException | RuntimeException e) {
+                    failures.put(docRenderer, e);
                 }
+            }
 
-                Writer writer = null;
+            for (Map.Entry<DocumentRenderer, Future<?>> entry : futures.entrySet()) {
                 try {
-                    if (!docRenderer.isExternalReport()) {
-                        writer = WriterFactory.newWriter(outputFile, siteRenderingContext.getOutputEncoding());
-                    }
-                    docRenderer.renderDocument(writer, this, siteRenderingContext);
-                } finally {
-                    IOUtil.close(writer);
+                    entry.getValue().get();
+                } catch (ExecutionException e) {
+                    failures.put(entry.getKey(), e.getCause());
                 }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RendererException("Interrupted while rendering documents", e);
+        } finally {
+            executor.shutdownNow();
+            if (callerParsers == null) {
+                threadParsers.remove();
+            } else {
+                threadParsers.set(callerParsers);
+            }
+        }
+
+        if (!failures.isEmpty()) {
+            throwRenderingFailures(failures);
+        }
+    }
+
+    private static void throwRenderingFailures(Map<DocumentRenderer, Throwable> failures)
+            throws RendererException, IOException {
+        Throwable first = failures.values().iterator().next();
+        if (first instanceof Error) {
+            throw (Error) first;
+        }
+        if (failures.size() == 1) {
+            if (first instanceof RendererException) {
+                throw (RendererException) first;
+            } else if (first instanceof IOException) {
+                throw (IOException) first;
+            } else if (first instanceof RuntimeException) {
+                throw (RuntimeException) first;
+            }
+        }
+
+        StringBuilder message = new StringBuilder();
+        message.append(failures.size()).append(" documents failed to render:");
+        for (Map.Entry<DocumentRenderer, Throwable> failure : failures.entrySet()) {
+            message.append(SystemUtils.LINE_SEPARATOR)
+                    .append("- ")
+                    .append(failure.getKey().getOutputName())
+                    .append(": ")
+                    .append(failure.getValue().getMessage());
+        }
+        RendererException exception = new RendererException(message.toString(), first);
+        failures.values().stream().skip(1).forEach(exception::addSuppressed);
+        throw exception;
+    }
+
+    /**
+     * Select the documents to render: documents which output is missing or outdated, according to the render manifest
+     * if used or else to the modification dates, and documents always overwritten.
+     *
+     * @return the documents to render, in rendering order, with their fingerprint to record in the render manifest,
+     * <code>null</code> if not recorded
+     */
+    private Map<DocumentRenderer, String> getModifiedDocuments(
+            Collection<DocumentRenderer> documents,
+            SiteRenderingContext siteRenderingContext,
+            File outputDirectory,
+            RenderManifest manifest)
+            throws IOException {
+        Map<DocumentRenderer, String> modifiedDocuments = new LinkedHashMap<>();
+        for (DocumentRenderer docRenderer : documents) {
+            DocumentRenderingContext docRenderingContext = docRenderer.getRenderingContext();
+
+            File outputFile = new File(outputDirectory, docRenderer.getOutputName());
+
+            File inputFile = new File(docRenderingContext.getBasedir(), docRenderingContext.getInputName());
+
+            String fingerprint = null;
+            boolean modified;
+            if (manifest != null && docRenderingContext.isDoxiaSource()) {
+                fingerprint = manifest.getFingerprint(docRenderingContext);
+                modified = !outputFile.exists() || !manifest.isUpToDate(docRenderer.getOutputName(), fingerprint);
+            } else {
+                modified = !outputFile.exists()
+                        || (inputFile.lastModified() > outputFile.lastModified())
+                        || (siteRenderingContext.getSiteModel().getLastModified() > outputFile.lastModified());
+            }
+
+            if (modified || docRenderer.isOverwrite()) {
+                modifiedDocuments.put(docRenderer, fingerprint);
             } else {
                 if (LOGGER.isDebugEnabled()) {
                     LOGGER.debug(inputFile + " unchanged, not regenerating...");
                 }
             }
         }
+        return modifiedDocuments;
+    }
+
+    /**
+     * Render a document selected by {@link #getModifiedDocuments}, recording its fingerprint in the render manifest
+     * once rendered.
+     */
+    private void renderModified(
+            DocumentRenderer docRenderer,
+            String fingerprint,
+            SiteRenderingContext siteRenderingContext,
+            File outputDirectory,
+            RenderManifest manifest)
+            throws RendererException, IOException {
+        File outputFile = new File(outputDirectory, docRenderer.getOutputName());
+
+        if (fingerprint != null) {
+            manifest.invalidate(docRenderer.getOutputName());
+        }
+
+        if (!outputFile.getParentFile().exists()) {
+            outputFile.getParentFile().mkdirs();
+        }
+
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("Generating " + outputFile);
+        }
+
+        if (docRenderer.isExternalReport()) {
+            docRenderer.renderDocument(null, this, siteRenderingContext);
+        } else if (siteRenderingContext.isCompareBeforeWrite() && outputFile.exists()) {
+            renderIfChanged(docRenderer, siteRenderingContext, outputFile);
+        } else {
+            renderToFile(docRenderer, siteRenderingContext, outputFile);
+            siteRenderingContext.getRenderStatistics().fileWritten();
+        }
+
+        if (fingerprint != null) {
+            manifest.update(docRenderer.getOutputName(), fingerprint);
+        }
+    }
+
+    private void renderToFile(DocumentRenderer docRenderer, SiteRenderingContext siteRenderingContext, File file)
+            throws RendererException, IOException {
+        Writer writer = WriterFactory.newWriter(file, siteRenderingContext.getOutputEncoding());
+        try {
+            docRenderer.renderDocument(writer, this, siteRenderingContext);
+        } finally {
+            IOUtil.close(writer);
+        }
+    }
+
+    /**
+     * Render a document to a temporary file and replace the existing output file only if the content differs, to keep
+     * the existing file untouched otherwise.
+     */
+    private void renderIfChanged(
+            DocumentRenderer docRenderer, SiteRenderingContext siteRenderingContext, File outputFile)
+            throws RendererException, IOException {
+        File renderedFile = new File(outputFile.getParentFile(), "." + outputFile.getName() + ".tmp");
+        try {
+            renderToFile(docRenderer, siteRenderingContext, renderedFile);
+
+            if (hasSameContent(renderedFile, outputFile)) {
+                if (LOGGER.isDebugEnabled()) {
+                    LOGGER.debug(outputFile + " unchanged, not rewritten");
+                }
+                siteRenderingContext.getRenderStatistics().fileUnchanged();
+            } else {
+                Files.move(renderedFile.toPath(), outputFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                siteRenderingContext.getRenderStatistics().fileWritten();
+            }
+        } finally {
+            Files.deleteIfExists(renderedFile.toPath());
+        }
+    }
+
+    private static boolean hasSameContent(File file, File other) throws IOException {
+        return file.length() == other.length()
+                && new Fingerprint().add(file).toHex().equals(new Fingerprint().add(other).toHex());
     }
 
     /** {@inheritDoc} */
     public void renderDocument(
             Writer writer, DocumentRenderingContext docRenderingContext, SiteRenderingContext siteContext)
             throws RendererException {
-        SiteRendererSink sink = new SiteRendererSink(
-                docRenderingContext,
-                siteContext.getSiteModel() != null ? siteContext.getSiteModel().getMermaid() : null);
+        mergeDocumentIntoSite(writer, parseDocument(docRenderingContext, siteContext), siteContext);
+    }
 
+    /**
+     * Parse a document written in a Doxia markup language, without merging it into the site template: this is
+     * the first phase of {@link #renderDocument(Writer, DocumentRenderingContext, SiteRenderingContext)}, the second
+     * one being {@link #mergeDocumentIntoSite(Writer, DocumentContent, SiteRenderingContext)}.
+     * The parsing result is taken from the {@link SiteRenderingContext#getDocumentContentCache() document content
+     * cache} when available.
+     *
+     * @param docRenderingContext the document's rendering context, which is expected to have a non-null parser id.
+     * @param siteContext the site's rendering context
+     * @return the parsed document content
+     * @throws RendererException if it bombs.
+     * @since 2.2.0
+     */
+    public DocumentContent parseDocument(DocumentRenderingContext docRenderingContext, SiteRenderingContext siteContext)
+            throws RendererException {
         File doc = new File(docRenderingContext.getBasedir(), docRenderingContext.getInputName());
 
-        Reader reader = null;
+        Parser parser;
         try {
-            String resource = doc.getAbsolutePath();
+            parser = getParser(docRenderingContext.getParserId());
+        } catch (ParserNotFoundException e) {
+            throw new RendererException("Error getting a parser for '" + doc + "'", e);
+        }
 
-            Parser parser = doxia.getParser(docRenderingContext.getParserId());
+        // a parser instance is only shared with other threads when rendering sequentially or when no dedicated
+        // instance could be created: the lock is not contended by the threads of a parallel rendering
+        synchronized (parser) {
             ParserConfigurator configurator = siteContext.getParserConfigurator();
             boolean isConfigured = false;
             if (configurator != null) {
@@ -430,15 +907,104 @@ public class DefaultSiteRenderer implements Renderer {
                 parser.setEmitAnchorsForIndexableEntries(true);
             }
 
+            DocumentContentCache cache = siteContext.getDocumentContentCache();
+            String key = null;
+            if (cache != null) {
+                try {
+                    key = DocumentContentKeys.getKey(
+                            parser,
+                            isConfigured,
+                            sinkWrapperFactories,
+                            DOXIA_SITE_RENDERER_VERSION,
+                            docRenderingContext,
+                            siteContext);
+                    ParsedDocumentContent content = (key == null) ? null : cache.get(key);
+                    if (content != null) {
+                        LOGGER.debug("Using cached content of {}", docRenderingContext.getDoxiaSourcePath());
+                        return new ParsedDocumentContent(content, docRenderingContext);
+                    }
+                } catch (IOException e) {
+                    throw new RendererException(
+                            "Error while reading cached content of '" + docRenderingContext.getDoxiaSourcePath() + "'",
+                            e);
+                }
+            }
+
+            DocumentContent content;
+            if (siteContext.isProfileTemplate()) {
+                TemplateProfiler.enter();
+                try {
+                    content = parse(parser, doc, docRenderingContext, siteContext);
+                } finally {
+                    TemplateProfiler.exit(siteContext.getTemplateProfile(), TemplateProfile.DOXIA_PARSING);
+                }
+            } else {
+                content = parse(parser, doc, docRenderingContext, siteContext);
+            }
+
+            if (key != null) {
+                ParsedDocumentContent parsedContent = new ParsedDocumentContent(content, docRenderingContext);
+                try {
+                    cache.put(key, parsedContent);
+                } catch (IOException e) {
+                    LOGGER.warn(
+                            "Unable to cache content of {}: {}",
+                            docRenderingContext.getDoxiaSourcePath(),
+                            e.toString());
+                }
+                return parsedContent;
+            }
+            return content;
+        }
+    }
+
+    private DocumentContent parse(
+            Parser parser, File doc, DocumentRenderingContext docRenderingContext, SiteRenderingContext siteContext)
+            throws RendererException {
+        SiteRendererSink sink = new SiteRendererSink(
+                docRenderingContext,
+                siteContext.getSiteModel() != null ? siteContext.getSiteModel().getMermaid() : null);
+
+        Reader reader = null;
+        PipedDocumentReader velocityReader = null;
+        try {
+            String resource = doc.getAbsolutePath();
+
             // TODO: DOXIA-111: the filter used here must be checked generally.
-            if (docRenderingContext.getAttribute("velocity") != null) {
+            if (docRenderingContext.getAttribute("velocity") != null
+                    && !(parser.getType() == Parser.XML_TYPE && siteContext.isValidate())) {
+                LOGGER.debug("Processing Velocity for " + docRenderingContext.getDoxiaSourcePath());
+                Template template;
+                try {
+                    template = getDocumentTemplate(doc, siteContext);
+                } catch (VelocityException e) {
+                    throw new RendererException(
+                            "Error parsing " + docRenderingContext.getDoxiaSourcePath() + " as a Velocity template", e);
+                }
+                Context vc = createDocumentVelocityContext(
+                        docRenderingContext, siteContext, getTemplateReferences(template));
+
+                // stream the Velocity processing result to the parser instead of buffering it
+                Writer processedContent = null;
+                if (siteContext.getProcessedContentOutput() != null) {
+                    // save Velocity processing result, ie the Doxia content that will be parsed after
+                    processedContent = newVelocityProcessedContentWriter(docRenderingContext, siteContext);
+                }
+                velocityReader = PipedDocumentReader.start(
+                        "velocity-" + docRenderingContext.getInputPath(),
+                        processedContent,
+                        writer -> template.merge(vc, writer));
+                reader = velocityReader;
+            } else if (docRenderingContext.getAttribute("velocity") != null) {
                 LOGGER.debug("Processing Velocity for " + docRenderingContext.getDoxiaSourcePath());
                 try {
-                    Context vc = createDocumentVelocityContext(docRenderingContext, siteContext);
+                    Template template = getDocumentTemplate(doc, siteContext);
+                    Context vc = createDocumentVelocityContext(
+                            docRenderingContext, siteContext, getTemplateReferences(template));
 
                     StringWriter sw = new StringWriter();
 
-                    velocity.getEngine().mergeTemplate(resource, siteContext.getInputEncoding(), vc, sw);
+                    template.merge(vc, sw);
 
                     String doxiaContent = sw.toString();
 
@@ -453,9 +1019,8 @@ public class DefaultSiteRenderer implements Renderer {
                             "Error parsing " + docRenderingContext.getDoxiaSourcePath() + " as a Velocity template", e);
                 }
 
-                if (parser.getType() == Parser.XML_TYPE && siteContext.isValidate()) {
-                    reader = validate(reader, resource);
-                }
+                // validation needs the whole content
+                reader = validate(reader, resource);
             } else {
                 switch (parser.getType()) {
                     case Parser.XML_TYPE:
@@ -472,10 +1037,19 @@ public class DefaultSiteRenderer implements Renderer {
                 }
             }
 
-            doxia.parse(reader, docRenderingContext.getParserId(), sink, docRenderingContext.getDoxiaSourcePath());
+            if (threadParsers.get() == null) {
+                doxia.parse(reader, docRenderingContext.getParserId(), sink, docRenderingContext.getDoxiaSourcePath());
+            } else {
+                parser.parse(reader, sink, docRenderingContext.getDoxiaSourcePath());
+            }
+
+            checkVelocityProcessing(velocityReader, docRenderingContext);
         } catch (ParserNotFoundException e) {
             throw new RendererException("Error getting a parser for '" + doc + "'", e);
         } catch (ParseException e) {
+            // a parse error may only be the consequence of a Velocity processing error
+            checkVelocityProcessing(velocityReader, docRenderingContext);
+
             StringBuilder errorMsgBuilder = new StringBuilder();
             errorMsgBuilder.append("Error parsing '").append(doc).append("'");
             if (e.getLineNumber() > 0) {
@@ -483,6 +1057,8 @@ public class DefaultSiteRenderer implements Renderer {
             }
             throw new RendererException(errorMsgBuilder.toString(), e);
         } catch (IOException e) {
+            checkVelocityProcessing(velocityReader, docRenderingContext);
+
             throw new RendererException("Error while processing '" + doc + "'", e);
         } finally {
             sink.flush();
@@ -492,12 +1068,97 @@ public class DefaultSiteRenderer implements Renderer {
             IOUtil.close(reader);
         }
 
-        mergeDocumentIntoSite(writer, (DocumentContent) sink, siteContext);
+        return sink;
+    }
+
+    /**
+     * Get the compiled Velocity template of a Velocity processed document, parsed only once as long as its source
+     * does not change.
+     */
+    private Template getDocumentTemplate(File doc, SiteRenderingContext siteContext) throws IOException {
+        String encoding = siteContext.getInputEncoding();
+        return documentTemplates.getTemplate(
+                doc, encoding, siteContext, () -> velocity.getEngine().getTemplate(doc.getAbsolutePath(), encoding));
+    }
+
+    /**
+     * Wait for the Velocity processing of a document streamed to the parser, and report its failure if any.
+     *
+     * @param velocityReader the reader of the Velocity processing result, or <code>null</code> if not streamed
+     */
+    private static void checkVelocityProcessing(
+            PipedDocumentReader velocityReader, DocumentRenderingContext docRenderingContext)
+            throws RendererException {
+        if (velocityReader == null) {
+            return;
+        }
+
+        Throwable failure;
+        try {
+            failure = velocityReader.awaitProducer();
+        } catch (InterruptedIOException e) {
+            throw new RendererException(
+                    "Interrupted while processing " + docRenderingContext.getDoxiaSourcePath()
+                            + " as a Velocity template",
+                    e);
+        }
+
+        if (failure instanceof Error) {
+            throw (Error) failure;
+        } else if (failure instanceof RuntimeException && !(failure instanceof VelocityException)) {
+            throw (RuntimeException) failure;
+        } else if (failure != null) {
+            throw new RendererException(
+                    "Error parsing " + docRenderingContext.getDoxiaSourcePath() + " as a Velocity template", failure);
+        }
+    }
+
+    /**
+     * Get the parser for the given id: the container's instance, or a dedicated instance when called from a
+     * parallel rendering thread, including the calling thread of a parallel rendering.
+     */
+    private Parser getParser(String parserId) throws ParserNotFoundException {
+        Parser parser = doxia.getParser(parserId);
+        Map<String, Parser> parsers = threadParsers.get();
+        if (parsers == null) {
+            return parser;
+        }
+        return parsers.computeIfAbsent(parserId, id -> newParserInstance(parser));
+    }
+
+    private Parser newParserInstance(Parser prototype) {
+        try {
+            Parser parser = prototype.getClass().getDeclaredConstructor().newInstance();
+            injector.injectMembers(parser);
+            return parser;
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            LOGGER.debug(
+                    "Cannot create a dedicated instance of parser " + prototype.getClass().getName()
+                            + ", sharing the container's instance",
+                    e);
+            return prototype;
+        }
     }
 
     private void saveVelocityProcessedContent(
             DocumentRenderingContext docRenderingContext, SiteRenderingContext siteContext, String doxiaContent)
             throws IOException {
+        File outputFile = getVelocityProcessedContentFile(docRenderingContext, siteContext);
+
+        FileUtils.fileWrite(outputFile, siteContext.getInputEncoding(), doxiaContent);
+    }
+
+    private Writer newVelocityProcessedContentWriter(
+            DocumentRenderingContext docRenderingContext, SiteRenderingContext siteContext) throws IOException {
+        File outputFile = getVelocityProcessedContentFile(docRenderingContext, siteContext);
+
+        String encoding = siteContext.getInputEncoding();
+        return Files.newBufferedWriter(
+                outputFile.toPath(), (encoding == null) ? Charset.defaultCharset() : Charset.forName(encoding));
+    }
+
+    private File getVelocityProcessedContentFile(
+            DocumentRenderingContext docRenderingContext, SiteRenderingContext siteContext) {
         if (!siteContext.getProcessedContentOutput().exists()) {
             siteContext.getProcessedContentOutput().mkdirs();
         }
@@ -512,11 +1173,13 @@ public class DefaultSiteRenderer implements Renderer {
             outputParent.mkdirs();
         }
 
-        FileUtils.fileWrite(outputFile, siteContext.getInputEncoding(), doxiaContent);
+        return outputFile;
     }
 
     /**
      * Creates a Velocity Context with all generic tools configured wit the site rendering context.
+     * The tool manager is created once per site rendering context configuration: application scoped tools are shared
+     * by every document, only request scoped tools being created for each context.
      *
      * @param siteRenderingContext the site rendering context
      * @return a Velocity tools managed context
@@ -525,6 +1188,19 @@ public class DefaultSiteRenderer implements Renderer {
         Locale locale = siteRenderingContext.getLocale();
         String dateFormat = siteRenderingContext.getSiteModel().getPublishDate().getFormat();
         String timeZoneId = siteRenderingContext.getSiteModel().getPublishDate().getTimezone();
+
+        // custom tools configuration is looked up in the skin class loader, whatever the calling thread
+        ClassLoader classLoader = siteRenderingContext.getTemplateClassLoader();
+        List<Object> key = Arrays.asList(locale, dateFormat, timeZoneId, classLoader);
+        ToolManager manager = siteRenderingContext
+                .getToolManagers()
+                .computeIfAbsent(key, k -> createToolManager(locale, dateFormat, timeZoneId, classLoader));
+
+        return manager.createContext();
+    }
+
+    private ToolManager createToolManager(
+            Locale locale, String dateFormat, String timeZoneId, ClassLoader classLoader) {
         TimeZone timeZone =
                 "system".equalsIgnoreCase(timeZoneId) ? TimeZone.getDefault() : TimeZone.getTimeZone(timeZoneId);
 
@@ -554,7 +1230,16 @@ public class DefaultSiteRenderer implements Renderer {
                 .tool(SortTool.class)
                 .tool(XmlTool.class);
 
-        FactoryConfiguration customConfig = ConfigurationUtils.findInClasspath(TOOLS_LOCATION);
+        FactoryConfiguration customConfig;
+        ClassLoader old = Thread.currentThread().getContextClassLoader();
+        if (classLoader != null) {
+            Thread.currentThread().setContextClassLoader(classLoader);
+        }
+        try {
+            customConfig = ConfigurationUtils.findInClasspath(TOOLS_LOCATION);
+        } finally {
+            Thread.currentThread().setContextClassLoader(old);
+        }
 
         if (customConfig != null) {
             config.addConfiguration(customConfig);
@@ -563,19 +1248,50 @@ public class DefaultSiteRenderer implements Renderer {
         ToolManager manager = new ToolManager(false, false);
         manager.configure(config);
 
-        return manager.createContext();
+        // application toolbox is lazily created without synchronization: create it before sharing the manager
+        manager.getApplicationToolbox();
+
+        return manager;
     }
 
     /**
      * Create a Velocity Context for a Doxia document, containing every information about rendered document.
+     * The context is layered: document values are put in a thin overlay, chained to the site level values built once
+     * per site rendering context, themselves chained to the Velocity tools.
      *
      * @param docRenderingContext the document's rendering context (may be {@code null} in which case the context does not contain document-specific information)
      * @param siteRenderingContext the site rendering context
-     * @return a Velocity tools managed context
+     * @return a Velocity context chained to the site level values and the Velocity tools
      */
     protected Context createDocumentVelocityContext(
             DocumentRenderingContext docRenderingContext, SiteRenderingContext siteRenderingContext) {
-        Context context = createToolManagedVelocityContext(siteRenderingContext);
+        return createDocumentVelocityContext(docRenderingContext, siteRenderingContext, TemplateReferences.UNKNOWN);
+    }
+
+    /**
+     * Create a Velocity Context for a Doxia document, for a template reading only some context keys: context
+     * customizers putting only keys the template doesn't read are not applied.
+     *
+     * @param docRenderingContext the document's rendering context, may be {@code null}
+     * @param siteRenderingContext the site rendering context
+     * @param references the context keys the template may read
+     * @return a Velocity context chained to the site level values and the Velocity tools
+     */
+    private Context createDocumentVelocityContext(
+            DocumentRenderingContext docRenderingContext,
+            SiteRenderingContext siteRenderingContext,
+            TemplateReferences references) {
+        startSite(siteRenderingContext);
+        Context toolContext = createToolManagedVelocityContext(siteRenderingContext);
+        Map<String, Object> siteValues = getSiteVelocityValues(siteRenderingContext);
+        Map<String, Object> documentValues = new HashMap<>();
+        Context context = new VelocityContext(documentValues, new VelocityContext(siteValues, toolContext));
+
+        if (toolContext instanceof ToolContext) {
+            // let $context see every layer, not only the tools
+            ((ToolContext) toolContext).putToolProperty(ToolContext.CONTEXT_KEY, context);
+        }
+
         if (docRenderingContext != null) {
             // ----------------------------------------------------------------------
             // Data objects
@@ -594,6 +1310,9 @@ public class DefaultSiteRenderer implements Renderer {
             context.put("alignedFileName", alignedFilePath);
 
             for (Map.Entry<String, ContextCustomizer> entry : contextCustomizers.entrySet()) {
+                if (!isApplied(entry.getValue(), references)) {
+                    continue;
+                }
                 try {
                     LOGGER.debug("Applying Velocity context customizer '" + entry.getKey() + "'");
                     entry.getValue().customizeContext(context, docRenderingContext, siteRenderingContext);
@@ -604,39 +1323,61 @@ public class DefaultSiteRenderer implements Renderer {
                             e);
                 }
             }
+
+            // site level values were always put after the document ones, and so take precedence over them
+            documentValues.keySet().removeIf(siteValues::containsKey);
         }
-        context.put("site", siteRenderingContext.getSiteModel());
+
+        return context;
+    }
+
+    /**
+     * Site level values of the document Velocity context, which don't depend on the rendered document: they are
+     * computed once per site rendering context and shared, unmodifiable, by every document.
+     *
+     * @param siteRenderingContext the site rendering context
+     * @return the site level values
+     */
+    private Map<String, Object> getSiteVelocityValues(SiteRenderingContext siteRenderingContext) {
+        Map<String, Object> siteValues = siteRenderingContext.getSiteVelocityValues();
+        if (siteValues != null) {
+            return siteValues;
+        }
+
+        siteValues = new HashMap<>();
+        siteValues.put("site", siteRenderingContext.getSiteModel());
         // TODO Deprecated -- will be removed!
-        context.put("decoration", siteRenderingContext.getSiteModel());
+        siteValues.put("decoration", siteRenderingContext.getSiteModel());
 
-        context.put("locale", siteRenderingContext.getLocale());
-        context.put("supportedLocales", Collections.unmodifiableList(siteRenderingContext.getSiteLocales()));
+        siteValues.put("locale", siteRenderingContext.getLocale());
+        siteValues.put("supportedLocales", Collections.unmodifiableList(siteRenderingContext.getSiteLocales()));
 
-        context.put("publishDate", siteRenderingContext.getPublishDate());
+        siteValues.put("publishDate", siteRenderingContext.getPublishDate());
 
         if (DOXIA_SITE_RENDERER_VERSION != null) {
-            context.put("doxiaSiteRendererVersion", DOXIA_SITE_RENDERER_VERSION);
+            siteValues.put("doxiaSiteRendererVersion", DOXIA_SITE_RENDERER_VERSION);
         }
 
         // Add user properties
         Map<String, ?> templateProperties = siteRenderingContext.getTemplateProperties();
 
         if (templateProperties != null) {
-            for (Map.Entry<String, ?> entry : templateProperties.entrySet()) {
-                context.put(entry.getKey(), entry.getValue());
-            }
+            siteValues.putAll(templateProperties);
         }
 
         // ----------------------------------------------------------------------
         // Tools
         // ----------------------------------------------------------------------
 
-        context.put("PathTool", new PathTool());
+        siteValues.put("PathTool", new PathTool());
 
-        context.put("StringUtils", new StringUtils());
+        siteValues.put("StringUtils", new StringUtils());
 
-        context.put("plexus", plexus);
-        return context;
+        siteValues.put("plexus", plexus);
+
+        siteValues = Collections.unmodifiableMap(siteValues);
+        siteRenderingContext.setSiteVelocityValues(siteValues);
+        return siteValues;
     }
 
     /**
@@ -649,19 +1390,18 @@ public class DefaultSiteRenderer implements Renderer {
      */
     protected Context createSiteTemplateVelocityContext(
             DocumentContent content, SiteRenderingContext siteRenderingContext) {
-        // first get the context from document
-        Context context = createDocumentVelocityContext(content.getRenderingContext(), siteRenderingContext);
+        // first get the context from document, for the site template if already loaded
+        Template siteTemplate = siteRenderingContext.getSiteTemplate();
+        Context context = createDocumentVelocityContext(
+                content.getRenderingContext(),
+                siteRenderingContext,
+                (siteTemplate == null) ? TemplateReferences.UNKNOWN : getTemplateReferences(siteTemplate));
 
         // then add data objects from rendered document
 
         // Add infos from document
         Collection<String> authors = content.getAuthors();
-        if (authors != null && !authors.isEmpty()) {
-            context.put("authors", authors);
-        } else {
-            // use scmModifiedDate (if available) as fallback
-            context.put("authors", context.get("scmModifiedAuthor"));
-        }
+        putWithFallback(context, "authors", (authors != null && !authors.isEmpty()) ? authors : null);
 
         String shortTitle = content.getTitle();
         context.put("shortTitle", shortTitle);
@@ -688,18 +1428,20 @@ public class DefaultSiteRenderer implements Renderer {
 
         context.put("title", title.length() > 0 ? title.toString() : null);
 
-        context.put("headContent", content.getHead());
+        if (content instanceof SiteRendererSink) {
+            // written to the output chunk by chunk, without intermediate String
+            context.put("headContent", ((SiteRendererSink) content).getHeadContent());
 
-        context.put("bodyContent", content.getBody());
-
-        // document date (got from Doxia Sink date() API)
-        if (content.getDate() != null) {
-            context.put("documentDate", content.getDate());
+            context.put("bodyContent", ((SiteRendererSink) content).getBodyContent());
         } else {
-            // use scmModifiedDate (if available) as fallback
-            context.put("documentDate", context.get("scmModifiedDate"));
+            context.put("headContent", content.getHead());
+
+            context.put("bodyContent", content.getBody());
         }
 
+        // document date (got from Doxia Sink date() API)
+        putWithFallback(context, "documentDate", content.getDate());
+
         // document rendering context, to get eventual inputPath
         context.put("docRenderingContext", content.getRenderingContext());
 
@@ -719,6 +1461,13 @@ public class DefaultSiteRenderer implements Renderer {
         LOGGER.debug("Processing Velocity for template " + templateName + " on "
                 + content.getRenderingContext().getDoxiaSourcePath());
 
+        try {
+            acquireSkin(siteRenderingContext);
+        } catch (IOException e) {
+            throw new RendererException("Error opening the skin of the site template " + templateName, e);
+        }
+
+        // once the skin is acquired, for the tools to be configured from the skin class loader
         Context context = createSiteTemplateVelocityContext(content, siteRenderingContext);
 
         ClassLoader old = null;
@@ -734,33 +1483,30 @@ public class DefaultSiteRenderer implements Renderer {
         }
 
         try {
-            Template template;
-            Artifact skin = siteRenderingContext.getSkin();
+            Template template = getSiteTemplate(siteRenderingContext);
 
-            try {
-                SkinModel skinModel = siteRenderingContext.getSkinModel();
-                String encoding = (skinModel == null) ? null : skinModel.getEncoding();
-
-                template = (encoding == null)
-                        ? velocity.getEngine().getTemplate(templateName)
-                        : velocity.getEngine().getTemplate(templateName, encoding);
-            } catch (ParseErrorException pee) {
-                throw new RendererException(
-                        "Velocity parsing error while reading the site template " + "from " + skin.getId() + " skin",
-                        pee);
-            } catch (ResourceNotFoundException rnfe) {
-                throw new RendererException(
-                        "Could not find the site template " + "from " + skin.getId() + " skin", rnfe);
+            boolean profile = siteRenderingContext.isProfileTemplate();
+            if (profile) {
+                TemplateProfiler.enter();
             }
-
             try {
-                StringWriter sw = new StringWriter();
-                template.merge(context, sw);
-                writer.write(sw.toString().replaceAll("\r?\n", SystemUtils.LINE_SEPARATOR));
+                // stream the merge to the writer instead of buffering the whole page
+                LineSeparatorNormalizingWriter out =
+                        new LineSeparatorNormalizingWriter(writer, SystemUtils.LINE_SEPARATOR);
+                try {
+                    template.merge(context, out);
+                } finally {
+                    // the writer is owned by the caller
+                    out.finish();
+                }
             } catch (VelocityException ve) {
                 throw new RendererException("Velocity error while merging site template.", ve);
             } catch (IOException ioe) {
                 throw new RendererException("IO exception while merging site template.", ioe);
+            } finally {
+                if (profile) {
+                    TemplateProfiler.exit(siteRenderingContext.getTemplateProfile(), "[" + templateName + "]");
+                }
             }
         } finally {
             IOUtil.close(writer);
@@ -771,6 +1517,57 @@ public class DefaultSiteRenderer implements Renderer {
         }
     }
 
+    private Template getSiteTemplate(SiteRenderingContext siteRenderingContext) throws RendererException {
+        Template template = siteRenderingContext.getSiteTemplate();
+        if (template != null) {
+            return template;
+        }
+
+        // the template compiled for a registered skin is shared as long as the context still uses the skin as is,
+        // and is not instrumented for profiling
+        SkinRegistry.Skin registeredSkin = siteRenderingContext.getRegisteredSkin();
+        if (registeredSkin != null
+                && (siteRenderingContext.isProfileTemplate()
+                        || !SKIN_TEMPLATE_LOCATION.equals(siteRenderingContext.getTemplateName())
+                        || siteRenderingContext.getTemplateClassLoader() != registeredSkin.getClassLoader()
+                        || siteRenderingContext.getSkinModel() != registeredSkin.getSkinModel())) {
+            registeredSkin = null;
+        }
+        if (registeredSkin != null && registeredSkin.getTemplate() != null) {
+            template = registeredSkin.getTemplate();
+            siteRenderingContext.setSiteTemplate(template);
+            return template;
+        }
+
+        String templateName = siteRenderingContext.getTemplateName();
+        Artifact skin = siteRenderingContext.getSkin();
+
+        try {
+            SkinModel skinModel = siteRenderingContext.getSkinModel();
+            String encoding = (skinModel == null) ? null : skinModel.getEncoding();
+
+            template = (encoding == null)
+                    ? velocity.getEngine().getTemplate(templateName)
+                    : velocity.getEngine().getTemplate(templateName, encoding);
+        } catch (ParseErrorException pee) {
+            throw new RendererException(
+                    "Velocity parsing error while reading the site template " + "from " + skin.getId() + " skin", pee);
+        } catch (ResourceNotFoundException rnfe) {
+            throw new RendererException("Could not find the site template " + "from " + skin.getId() + " skin", rnfe);
+        }
+
+        if (siteRenderingContext.isProfileTemplate()) {
+            TemplateProfiler.instrument(template, siteRenderingContext.getTemplateProfile());
+        }
+
+        // Velocity resource cache is not enabled: keep the compiled template for the next documents
+        siteRenderingContext.setSiteTemplate(template);
+        if (registeredSkin != null) {
+            registeredSkin.setTemplate(template);
+        }
+        return template;
+    }
+
     private SiteRenderingContext createSiteRenderingContext(
             Map<String, ?> attributes, SiteModel siteModel, String defaultTitle, Locale locale) {
         SiteRenderingContext context = new SiteRenderingContext();
@@ -791,22 +1588,13 @@ public class DefaultSiteRenderer implements Renderer {
 
         context.setSkin(skin);
 
-        ZipFile zipFile = getZipFile(skin.getFile());
-        InputStream in = null;
-
+        SkinRegistry.Skin registeredSkin = skinRegistry.acquire(skin.getFile(), skin.getId());
         try {
-            if (zipFile.getEntry(SKIN_TEMPLATE_LOCATION) == null) {
-                throw new RendererException("Skin does not contain template at " + SKIN_TEMPLATE_LOCATION);
-            }
             context.setTemplateName(SKIN_TEMPLATE_LOCATION);
-            context.setTemplateClassLoader(
-                    new URLClassLoader(new URL[] {skin.getFile().toURI().toURL()}));
-
-            ZipEntry skinDescriptorEntry = zipFile.getEntry(SkinModel.SKIN_DESCRIPTOR_LOCATION);
-            if (skinDescriptorEntry != null) {
-                in = zipFile.getInputStream(skinDescriptorEntry);
+            context.setTemplateClassLoader(registeredSkin.getClassLoader());
 
-                SkinModel skinModel = new SkinXpp3Reader().read(in);
+            SkinModel skinModel = registeredSkin.getSkinModel();
+            if (skinModel != null) {
                 context.setSkinModel(skinModel);
 
                 String toolsPrerequisite = skinModel.getPrerequisites() == null
@@ -825,19 +1613,95 @@ public class DefaultSiteRenderer implements Renderer {
                             + "compatible with this Doxia Sitetools version.");
                 }
             }
-        } catch (XmlPullParserException e) {
-            throw new RendererException(
-                    "Failed to parse " + SkinModel.SKIN_DESCRIPTOR_LOCATION + " skin descriptor from " + skin.getId()
-                            + " skin",
-                    e);
-        } finally {
-            IOUtil.close(in);
-            closeZipFile(zipFile);
+        } catch (RendererException | RuntimeException e) {
+            skinRegistry.release(registeredSkin);
+            throw e;
         }
+        context.setRegisteredSkin(registeredSkin);
+        context.setRegisteredSkinAcquired(true);
 
         return context;
     }
 
+    /**
+     * Acquire the registered skin of a site rendering context again if it was released since the context was last
+     * used, opening the skin class loader again. The skin is held until the end of the next rendering, or until the
+     * context is released if it was opened.
+     */
+    private void acquireSkin(SiteRenderingContext siteRenderingContext) throws IOException {
+        synchronized (siteRenderingContext) {
+            SkinRegistry.Skin registeredSkin = siteRenderingContext.getRegisteredSkin();
+            if (registeredSkin != null && !siteRenderingContext.isRegisteredSkinAcquired()) {
+                skinRegistry.acquire(registeredSkin);
+                siteRenderingContext.setRegisteredSkinAcquired(true);
+                if (siteRenderingContext.getTemplateClassLoader() == null) {
+                    siteRenderingContext.setTemplateClassLoader(registeredSkin.getClassLoader());
+                }
+            }
+        }
+    }
+
+    /**
+     * Release the registered skin of a site rendering context, its class loader being closed if no other context
+     * uses it. The skin is acquired again if the context is used again.
+     */
+    private void releaseSkin(SiteRenderingContext siteRenderingContext) {
+        synchronized (siteRenderingContext) {
+            SkinRegistry.Skin registeredSkin = siteRenderingContext.getRegisteredSkin();
+            if (registeredSkin != null && siteRenderingContext.isRegisteredSkinAcquired()) {
+                if (siteRenderingContext.getTemplateClassLoader() == registeredSkin.getClassLoader()) {
+                    // the class loader may be closed: opened again with the skin
+                    siteRenderingContext.setTemplateClassLoader(null);
+                }
+                siteRenderingContext.setRegisteredSkinAcquired(false);
+                skinRegistry.release(registeredSkin);
+            }
+        }
+    }
+
+    /** {@inheritDoc} */
+    public void openContext(SiteRenderingContext siteRenderingContext) throws IOException {
+        acquireSkin(siteRenderingContext);
+        startSite(siteRenderingContext);
+        siteRenderingContext.setOpened(true);
+    }
+
+    /** {@inheritDoc} */
+    public void releaseContext(SiteRenderingContext siteRenderingContext) {
+        siteRenderingContext.setOpened(false);
+        finishSite(siteRenderingContext);
+        releaseSkin(siteRenderingContext);
+        siteRenderingContext.setRegisteredSkin(null);
+        documentTemplates.release(siteRenderingContext);
+    }
+
+    /**
+     * Notify the context customizers that the site rendering finished, if they were notified that it started: they
+     * are notified again if the context is rendered again, unless opened.
+     */
+    private void finishSite(SiteRenderingContext siteRenderingContext) {
+        synchronized (siteRenderingContext) {
+            if (siteRenderingContext.isSiteStarted()) {
+                siteRenderingContext.setSiteStarted(false);
+                for (Map.Entry<String, ContextCustomizer> entry : contextCustomizers.entrySet()) {
+                    try {
+                        entry.getValue().afterSite(siteRenderingContext);
+                    } catch (Exception e) {
+                        LOGGER.warn(
+                                "Velocity context customizer '" + entry.getKey()
+                                        + "' threw an exception after the site rendering",
+                                e);
+                    }
+                }
+            }
+        }
+    }
+
+    /** {@inheritDoc} */
+    public void evictUnusedSkins() {
+        skinRegistry.evictUnused();
+    }
+
     boolean matchVersion(String current, String prerequisite) throws RendererException {
         try {
             ArtifactVersion v = new DefaultArtifactVersion(current);
@@ -875,8 +1739,9 @@ public class DefaultSiteRenderer implements Renderer {
     public void copyResources(SiteRenderingContext siteRenderingContext, File outputDirectory) throws IOException {
         ZipFile file = getZipFile(siteRenderingContext.getSkin().getFile());
 
-        Context velocityContext = createDocumentVelocityContext(null, siteRenderingContext);
-        Map<String, String> resourceConditions = createResourceConditionsMap(siteRenderingContext.getSkinModel());
+        boolean siteStarted = siteRenderingContext.isSiteStarted();
+        ResourceConditions.Evaluation resourceConditions = getResourceConditions(siteRenderingContext)
+                .evaluate(() -> createDocumentVelocityContext(null, siteRenderingContext));
         try {
             for (Enumeration<? extends ZipEntry> e = file.entries(); e.hasMoreElements(); ) {
                 ZipEntry entry = e.nextElement();
@@ -889,7 +1754,7 @@ public class DefaultSiteRenderer implements Renderer {
                             // resource
                             continue;
                         }
-                        if (!isResourceRelevant(entry.getName(), velocityContext, resourceConditions)) {
+                        if (!resourceConditions.isResourceRelevant(entry.getName())) {
                             continue;
                         }
                         destFile.getParentFile().mkdirs();
@@ -902,6 +1767,10 @@ public class DefaultSiteRenderer implements Renderer {
             }
         } finally {
             closeZipFile(file);
+            if (!siteStarted) {
+                // context customizers were only set up to evaluate the resource conditions
+                finishSite(siteRenderingContext);
+            }
         }
 
         // Copy extra site resources
@@ -965,56 +1834,13 @@ public class DefaultSiteRenderer implements Renderer {
         }
     }
 
-    private boolean isResourceRelevant(String name, Context velocityContext, Map<String, String> resourceConditions) {
-        if (resourceConditions == null || !resourceConditions.containsKey(name)) {
-            LOGGER.debug("No condition for resource '{}'", name);
-        } else {
-            String condition = resourceConditions.get(name);
-            LOGGER.debug(
-                    "Evaluating condition for resource '{}' with condition '{}'",
-                    name,
-                    escapeLineBreaksForLogging(condition));
-            StringWriter writer = new StringWriter();
-            Velocity.evaluate(velocityContext, writer, "conditional-resource-evaluation", condition);
-            String result = writer.toString().trim();
-            LOGGER.debug("Condition evaluation result: {}", result);
-            if (!Boolean.parseBoolean(result)) {
-                LOGGER.debug("Excluding resource '{}'", name);
-                return false;
-            }
-        }
-        return true;
-    }
-
-    private Map<String, String> createResourceConditionsMap(SkinModel skinModel) {
-        if (skinModel == null) {
-            LOGGER.debug("No skin model provided, so no resource conditions will be applied.");
-            return Collections.emptyMap();
-        }
-        Map<String, String> resourceConditions = new HashMap<>();
-        for (ResourceCondition resource : skinModel.getResourceConditions()) {
-            if (resource.getVtlCondition() != null
-                    && !resource.getVtlCondition().isEmpty()) {
-                for (String resourceName : resource.getResourceNames()) {
-                    if (resourceConditions.containsKey(resourceName)) {
-                        LOGGER.warn(
-                                "Multiple conditions found for resource '{}'. Only the first one will be used.",
-                                resourceName);
-                        continue;
-                    }
-                    LOGGER.debug(
-                            "Adding condition for resource '{}' with condition '{}'",
-                            resourceName,
-                            escapeLineBreaksForLogging(resource.getVtlCondition()));
-                    resourceConditions.put(resourceName, resource.getVtlCondition());
-                }
-            }
+    private static ResourceConditions getResourceConditions(SiteRenderingContext siteRenderingContext) {
+        // resource conditions are compiled once per skin, unless the context uses another skin model
+        SkinRegistry.Skin registeredSkin = siteRenderingContext.getRegisteredSkin();
+        if (registeredSkin != null && siteRenderingContext.getSkinModel() == registeredSkin.getSkinModel()) {
+            return registeredSkin.getResourceConditions();
         }
-        return resourceConditions;
-    }
-
-    private static String escapeLineBreaksForLogging(String input) {
-        return input.replaceAll("\\r?\\n", "\\\\n");
+        return ResourceConditions.create(siteRenderingContext.getSkinModel());
     }
 
     private static void copyFileFromZip(ZipFile file, ZipEntry entry, File destFile) throws IOException {
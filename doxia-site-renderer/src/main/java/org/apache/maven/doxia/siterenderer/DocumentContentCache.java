@@ -0,0 +1,56 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.doxia.siterenderer;
+
+import java.io.IOException;
+
+/**
+ * Cache of parsed document contents, to avoid parsing again a document source that did not change when only
+ * the site template, skin or site model changed.
+ * <p>
+ * Keys are computed by the site renderer from everything the parsing result depends on: the document source content,
+ * parser id, parser options, sink wrapper factories registered automatically, encoding, path and site renderer
+ * version. Documents are never cached when processed by Velocity, when parsed with a parser configured by the
+ * {@link ParserConfigurator}, or when they may invoke Doxia macros, which may read other files: macro invocations are
+ * detected by scanning the source for the Apt, Xdoc, Fml and Markdown macro syntaxes, so documents of other formats
+ * or in an encoding which is not ASCII compatible are not cached either.
+ * Implementations must be thread-safe, as documents may be rendered in parallel.
+ *
+ * @since 2.2.0
+ * @see SiteRenderingContext#setDocumentContentCache(DocumentContentCache)
+ */
+public interface DocumentContentCache {
+    /**
+     * Get a parsed document content.
+     *
+     * @param key the document content key
+     * @return the cached document content, or <code>null</code> if not found
+     * @throws IOException if the cache cannot be read
+     */
+    ParsedDocumentContent get(String key) throws IOException;
+
+    /**
+     * Store a parsed document content.
+     *
+     * @param key the document content key
+     * @param content the document content to store
+     * @throws IOException if the cache cannot be written
+     */
+    void put(String key, ParsedDocumentContent content) throws IOException;
+}
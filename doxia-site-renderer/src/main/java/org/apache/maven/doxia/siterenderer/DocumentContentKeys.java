@@ -0,0 +1,164 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.doxia.siterenderer;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.maven.doxia.parser.Parser;
+import org.apache.maven.doxia.sink.impl.SinkWrapperFactory;
+import org.apache.maven.doxia.site.MermaidConfiguration;
+
+/**
+ * Computes the keys of document contents in a {@link DocumentContentCache}, from everything the parsing result
+ * depends on. A document content is only cached when these inputs are all known through public API:
+ * <ul>
+ * <li>documents processed by Velocity are never cached, as the processing depends on the site context,</li>
+ * <li>documents parsed with a parser configured by the {@link ParserConfigurator} are never cached, as the sink
+ * wrapper factories it may have added to the parser cannot be read back,</li>
+ * <li>documents which may invoke Doxia macros, which may read other files like snippets, are never cached. Macro
+ * invocations are detected with a heuristic: a scan of the raw source for the macro syntax of the Doxia modules known
+ * to support macros (Apt, Xdoc, Fml and Markdown). Documents of other parsers, and documents whose encoding is not
+ * ASCII compatible (like UTF-16) for the scan to be reliable, are never cached.</li>
+ * </ul>
+ *
+ * @since 2.2.0
+ */
+final class DocumentContentKeys {
+    /** parsers whose macro syntax is known, see {@link #containsMacro(byte[])} */
+    private static final Set<String> MACRO_AWARE_PARSERS =
+            new HashSet<>(Arrays.asList("apt", "fml", "markdown", "xdoc", "xhtml5"));
+
+    /** macro invocation markers in Apt, Xdoc/Fml and Markdown syntax */
+    private static final String[] MACRO_MARKERS = {"%{", "<macro", "MACRO{"};
+
+    private DocumentContentKeys() {
+        // utility class
+    }
+
+    /**
+     * Compute the key of a document content.
+     *
+     * @param parser the parser, with the options used to parse the document
+     * @param isConfigured whether the parser was configured by the {@link ParserConfigurator}
+     * @param sinkWrapperFactories the sink wrapper factories registered automatically in every parser
+     * @param rendererVersion the site renderer version
+     * @param docRenderingContext the document rendering context
+     * @param siteContext the site rendering context
+     * @return the key, or {@code null} if the document content must not be cached
+     * @throws IOException if the document source cannot be read
+     */
+    static String getKey(
+            Parser parser,
+            boolean isConfigured,
+            Collection<SinkWrapperFactory> sinkWrapperFactories,
+            String rendererVersion,
+            DocumentRenderingContext docRenderingContext,
+            SiteRenderingContext siteContext)
+            throws IOException {
+        if (docRenderingContext.getAttribute("velocity") != null
+                || isConfigured
+                || !MACRO_AWARE_PARSERS.contains(docRenderingContext.getParserId())) {
+            return null;
+        }
+
+        File doc = new File(docRenderingContext.getBasedir(), docRenderingContext.getInputName());
+        byte[] source = Files.readAllBytes(doc.toPath());
+        if (!isAsciiCompatible(siteContext.getInputEncoding(), source) || containsMacro(source)) {
+            return null;
+        }
+
+        Fingerprint fingerprint = new Fingerprint()
+                .add(rendererVersion)
+                .add(docRenderingContext.getParserId())
+                .add(parser.getClass().getName())
+                .add(String.valueOf(parser.isEmitComments()))
+                .add(String.valueOf(parser.isEmitAnchorsForIndexableEntries()))
+                .add(docRenderingContext.getInputPath())
+                .add(docRenderingContext.getRelativePath())
+                .add(siteContext.getInputEncoding())
+                .add(source);
+
+        for (SinkWrapperFactory sinkWrapperFactory : sinkWrapperFactories) {
+            fingerprint
+                    .add(sinkWrapperFactory.getClass().getName())
+                    .add(String.valueOf(sinkWrapperFactory.getPriority()));
+        }
+
+        MermaidConfiguration mermaid =
+                siteContext.getSiteModel() != null ? siteContext.getSiteModel().getMermaid() : null;
+        if (mermaid == null) {
+            fingerprint.add((String) null);
+        } else {
+            fingerprint
+                    .add(mermaid.getConfig())
+                    .add(String.valueOf(mermaid.isUseTiny()))
+                    .add(mermaid.getExternalJs() == null ? null : mermaid.getExternalJs().asScriptTag());
+        }
+
+        return fingerprint.toHex();
+    }
+
+    /**
+     * Check if the macro markers of a document source are encoded as ASCII, for {@link #containsMacro(byte[])} to scan
+     * the raw source: the encoding must encode them as ASCII, and the source must not start with a UTF-16 or UTF-32
+     * byte order mark, which XML documents may use whatever the input encoding.
+     */
+    static boolean isAsciiCompatible(String encoding, byte[] source) {
+        if (source.length >= 2
+                && ((source[0] == (byte) 0xFE && source[1] == (byte) 0xFF)
+                        || (source[0] == (byte) 0xFF && source[1] == (byte) 0xFE)
+                        || (source[0] == 0 && source[1] == 0))) {
+            return false;
+        }
+        Charset charset;
+        try {
+            charset = (encoding == null) ? Charset.defaultCharset() : Charset.forName(encoding);
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+        for (String marker : MACRO_MARKERS) {
+            if (!Arrays.equals(marker.getBytes(charset), marker.getBytes(StandardCharsets.US_ASCII))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Check if a document source may invoke Doxia macros, in Apt, Xdoc/Fml or Markdown syntax.
+     */
+    static boolean containsMacro(byte[] source) {
+        // markers are ASCII, in an ASCII compatible encoding: no need to decode the source
+        String text = new String(source, StandardCharsets.ISO_8859_1);
+        for (String marker : MACRO_MARKERS) {
+            if (text.contains(marker)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
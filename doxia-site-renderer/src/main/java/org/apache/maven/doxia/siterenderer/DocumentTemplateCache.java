@@ -0,0 +1,157 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.doxia.siterenderer;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+import org.apache.velocity.Template;
+
+/**
+ * Cache of the compiled Velocity templates of Velocity processed documents, keyed by source path and encoding, and
+ * checked against the source content checksum: an unchanged document source is never parsed twice, whatever the
+ * Velocity engine resource cache configuration, for every locale and every render in watch mode.
+ * <p>
+ * Entries are kept as long as a site rendering context which used them is not released: see
+ * {@link #release(SiteRenderingContext)}. Entries whose site rendering contexts were all garbage collected without
+ * being released are dropped when another template is compiled.
+ *
+ * @since 2.2.0
+ */
+final class DocumentTemplateCache {
+    private final Map<String, CachedTemplate> templates = new ConcurrentHashMap<>();
+
+    private static final class CachedTemplate {
+        private final long length;
+
+        private final long lastModified;
+
+        private final String checksum;
+
+        private final Template template;
+
+        /** the site rendering contexts which used the template, weakly referenced if not released */
+        private final Set<SiteRenderingContext> contexts = Collections.newSetFromMap(new WeakHashMap<>());
+
+        private CachedTemplate(long length, long lastModified, String checksum, Template template) {
+            this.length = length;
+            this.lastModified = lastModified;
+            this.checksum = checksum;
+            this.template = template;
+        }
+
+        private Template use(SiteRenderingContext siteContext) {
+            synchronized (contexts) {
+                contexts.add(siteContext);
+            }
+            return template;
+        }
+
+        private boolean release(SiteRenderingContext siteContext) {
+            synchronized (contexts) {
+                contexts.remove(siteContext);
+                return contexts.isEmpty();
+            }
+        }
+
+        private boolean isUnused() {
+            synchronized (contexts) {
+                return contexts.isEmpty();
+            }
+        }
+    }
+
+    /**
+     * Get the compiled template of a document source, compiling it if the source is not cached yet or changed.
+     *
+     * @param source the document source
+     * @param encoding the document source encoding
+     * @param siteContext the site rendering context using the template
+     * @param compiler compiles the template from the document source
+     * @return the compiled template
+     * @throws IOException if the document source cannot be read
+     */
+    Template getTemplate(File source, String encoding, SiteRenderingContext siteContext, Supplier<Template> compiler)
+            throws IOException {
+        String key = source.getAbsolutePath() + '\0' + encoding;
+        long length = source.length();
+        long lastModified = source.lastModified();
+
+        CachedTemplate cached = templates.get(key);
+        if (cached != null && cached.length == length && cached.lastModified == lastModified) {
+            return cached.use(siteContext);
+        }
+
+        // timestamp changes without content changes, like a new checkout, don't require parsing the source again
+        String checksum = new Fingerprint().add(source).toHex();
+        if (cached != null && cached.checksum.equals(checksum)) {
+            CachedTemplate touched = new CachedTemplate(length, lastModified, checksum, cached.template);
+            synchronized (cached.contexts) {
+                touched.contexts.addAll(cached.contexts);
+            }
+            templates.put(key, touched);
+            return touched.use(siteContext);
+        }
+
+        // the cache grows: drop the templates of site rendering contexts garbage collected without being released
+        templates.values().removeIf(CachedTemplate::isUnused);
+
+        Template template = compiler.get();
+
+        // the Velocity engine reads the source again: only cache the template if the source did not change meanwhile,
+        // so that the checksum is the one of the bytes actually compiled
+        if (source.length() == length
+                && source.lastModified() == lastModified
+                && checksum.equals(new Fingerprint().add(source).toHex())) {
+            CachedTemplate compiled = new CachedTemplate(length, lastModified, checksum, template);
+            templates.put(key, compiled);
+            compiled.use(siteContext);
+        } else {
+            templates.remove(key);
+        }
+        return template;
+    }
+
+    /**
+     * Drop the templates which are not used anymore by another site rendering context than the released one.
+     *
+     * @param siteContext the released site rendering context
+     */
+    void release(SiteRenderingContext siteContext) {
+        for (Iterator<CachedTemplate> it = templates.values().iterator(); it.hasNext(); ) {
+            if (it.next().release(siteContext)) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * @return the number of cached templates
+     */
+    int size() {
+        return templates.size();
+    }
+}
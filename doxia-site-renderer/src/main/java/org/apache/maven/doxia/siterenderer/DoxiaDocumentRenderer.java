@@ -31,13 +31,28 @@ import java.io.Writer;
 public class DoxiaDocumentRenderer implements DocumentRenderer {
     private DocumentRenderingContext docRenderingContext;
 
+    private final boolean overwrite;
+
     /**
      * Constructor.
      *
      * @param docRenderingContext the document's rendering context to use.
      */
     public DoxiaDocumentRenderer(DocumentRenderingContext docRenderingContext) {
+        this(docRenderingContext, false);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param docRenderingContext the document's rendering context to use.
+     * @param overwrite whether to render the document even if its output is more recent than its source, for
+     * example when the source is known to have changed within the file system timestamp resolution.
+     * @since 2.2.0
+     */
+    public DoxiaDocumentRenderer(DocumentRenderingContext docRenderingContext, boolean overwrite) {
         this.docRenderingContext = docRenderingContext;
+        this.overwrite = overwrite;
     }
 
     /** {@inheritDoc} */
@@ -58,7 +73,7 @@ public class DoxiaDocumentRenderer implements DocumentRenderer {
 
     /** {@inheritDoc} */
     public boolean isOverwrite() {
-        return false;
+        return overwrite;
     }
 
     public boolean isExternalReport() {
@@ -0,0 +1,142 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.doxia.siterenderer;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Document content cache persisted in a directory, typically under <code>target/</code>, to avoid parsing again
+ * unchanged documents in a later build when only the skin, template or site model changed.
+ * <p>
+ * Each document content is stored in its own file named after its key. Entries are never evicted: cleaning
+ * the build directory clears the cache.
+ *
+ * @since 2.2.0
+ */
+public class FileDocumentContentCache implements DocumentContentCache {
+    /** Identifies the format of cache files, to be changed on any incompatible change. */
+    private static final int FORMAT = 0x444f5801;
+
+    private final Path directory;
+
+    /**
+     * Create a document content cache in a directory, created when storing the first document content.
+     *
+     * @param directory the cache directory
+     */
+    public FileDocumentContentCache(File directory) {
+        this.directory = directory.toPath();
+    }
+
+    /** {@inheritDoc} */
+    public ParsedDocumentContent get(String key) throws IOException {
+        Path file = getFile(key);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != FORMAT) {
+                return null;
+            }
+            String title = readString(in);
+            String date = readString(in);
+            int authorCount = in.readInt();
+            List<String> authors = new ArrayList<>(authorCount);
+            for (int i = 0; i < authorCount; i++) {
+                authors.add(readString(in));
+            }
+            String head = readString(in);
+            String body = readString(in);
+            return new ParsedDocumentContent(title, date, authors, head, body);
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (EOFException e) {
+            // truncated file: ignore it, it will be replaced
+            return null;
+        }
+    }
+
+    /** {@inheritDoc} */
+    public void put(String key, ParsedDocumentContent content) throws IOException {
+        Path file = getFile(key);
+        Files.createDirectories(file.getParent());
+
+        // write to a temporary file first, for concurrent builds to never read partially written content
+        Path tmp = Files.createTempFile(file.getParent(), key, ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.writeInt(FORMAT);
+                writeString(out, content.getTitle());
+                writeString(out, content.getDate());
+                out.writeInt(content.getAuthors().size());
+                for (String author : content.getAuthors()) {
+                    writeString(out, author);
+                }
+                writeString(out, content.getHead());
+                writeString(out, content.getBody());
+            }
+            try {
+                Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    private Path getFile(String key) {
+        // spread files over sub-directories to keep directories small
+        return directory.resolve(key.substring(0, 2)).resolve(key);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Write a string, {@link DataOutputStream#writeUTF(String)} being limited to 64 KB.
+     */
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+        } else {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.doxia.siterenderer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Incrementally computed SHA-256 fingerprint of rendering inputs, used to detect whether these inputs really changed.
+ * Also used by context customizers to detect changed documents.
+ *
+ * @since 2.2.0
+ */
+public final class Fingerprint {
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private final MessageDigest digest;
+
+    /**
+     * Create an empty fingerprint.
+     */
+    public Fingerprint() {
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Add a value, {@code null} being distinct from every other value.
+     *
+     * @param value the value to add, may be {@code null}
+     * @return this fingerprint
+     */
+    public Fingerprint add(String value) {
+        if (value == null) {
+            digest.update((byte) 0);
+        } else {
+            digest.update((byte) 1);
+            add(value.getBytes(StandardCharsets.UTF_8));
+        }
+        return this;
+    }
+
+    /**
+     * Add bytes.
+     *
+     * @param bytes the bytes to add
+     * @return this fingerprint
+     */
+    public Fingerprint add(byte[] bytes) {
+        digest.update(toBytes(bytes.length));
+        digest.update(bytes);
+        return this;
+    }
+
+    /**
+     * Add the content of a file.
+     *
+     * @param file the file to add, a missing file is added as {@code null} value
+     * @return this fingerprint
+     * @throws IOException if the file cannot be read
+     */
+    public Fingerprint add(File file) throws IOException {
+        if (file == null || !file.isFile()) {
+            return add((String) null);
+        }
+        digest.update((byte) 1);
+        digest.update(toBytes(file.length()));
+        byte[] buffer = new byte[8192];
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, n);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Complete the computation. The fingerprint must not be used afterwards.
+     *
+     * @return the hexadecimal representation of the fingerprint
+     */
+    public String toHex() {
+        return toHex(digest.digest());
+    }
+
+    /**
+     * Get the hexadecimal representation of bytes.
+     *
+     * @param bytes the bytes
+     * @return the lower case hexadecimal representation
+     */
+    public static String toHex(byte[] bytes) {
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[i * 2] = HEX_DIGITS[(bytes[i] >> 4) & 0xf];
+            chars[i * 2 + 1] = HEX_DIGITS[bytes[i] & 0xf];
+        }
+        return new String(chars);
+    }
+
+    private static byte[] toBytes(long value) {
+        byte[] bytes = new byte[8];
+        for (int i = 7; i >= 0; i--) {
+            bytes[i] = (byte) value;
+            value >>>= 8;
+        }
+        return bytes;
+    }
+}
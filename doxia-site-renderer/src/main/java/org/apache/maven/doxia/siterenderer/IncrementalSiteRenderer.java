@@ -0,0 +1,340 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.doxia.siterenderer;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.maven.doxia.siterenderer.SiteRenderingContext.SiteDirectory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Long-lived site rendering service for watch mode: keeps the site rendering context, with its resolved skin and
+ * compiled site template, and watches the site directories to re-render only the documents that changed.
+ * <p>
+ * Typical usage:
+ * <pre>
+ * try (IncrementalSiteRenderer renderer = new IncrementalSiteRenderer(siteRenderer, context, outputDirectory)) {
+ *     renderer.render();
+ *     while (running) {
+ *         renderer.renderChanges(1, TimeUnit.SECONDS);
+ *     }
+ * }
+ * </pre>
+ * Documents added or removed are detected: removing a source document removes its output.
+ * The site rendering context is opened with {@link SiteRenderer#openContext(SiteRenderingContext)} for the whole watch
+ * session, keeping its skin and the site resources of context customizers, and released when this renderer is closed.
+ * Changes of the site descriptor or of the skin are not taken into account: they require a new site rendering context,
+ * hence a new watch session.
+ * This class is not thread-safe: it is expected to be driven by a single thread.
+ *
+ * @since 2.2.0
+ */
+public class IncrementalSiteRenderer implements Closeable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(IncrementalSiteRenderer.class);
+
+    /**
+     * How long to wait for further file events after a first one, as editors often save a file in several steps.
+     */
+    private static final long SETTLE_MILLIS = 50;
+
+    private final SiteRenderer siteRenderer;
+
+    private final SiteRenderingContext siteRenderingContext;
+
+    private final File outputDirectory;
+
+    private final WatchService watchService;
+
+    private final Map<WatchKey, Path> watchedDirectories = new HashMap<>();
+
+    private Map<Path, DocumentRenderer> documentsBySource = Collections.emptyMap();
+
+    /**
+     * Create a watch mode renderer and start watching the site directories of the rendering context.
+     *
+     * @param siteRenderer the site renderer to use
+     * @param siteRenderingContext the site rendering context, kept open for the whole watch session and released
+     * when closed
+     * @param outputDirectory the output directory to write results
+     * @throws IOException if the site directories can't be watched or the site rendering context can't be opened
+     */
+    public IncrementalSiteRenderer(
+            SiteRenderer siteRenderer, SiteRenderingContext siteRenderingContext, File outputDirectory)
+            throws IOException {
+        this.siteRenderer = siteRenderer;
+        this.siteRenderingContext = siteRenderingContext;
+        this.outputDirectory = outputDirectory;
+        this.watchService = FileSystems.getDefault().newWatchService();
+
+        try {
+            for (SiteDirectory siteDirectory : siteRenderingContext.getSiteDirectories()) {
+                if (siteDirectory.getPath().isDirectory()) {
+                    watchTree(siteDirectory.getPath().toPath());
+                }
+            }
+            siteRenderer.openContext(siteRenderingContext);
+        } catch (IOException e) {
+            watchService.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Locate and render all the documents, skipping those not modified since their last rendering as
+     * {@link SiteRenderer#render(Collection, SiteRenderingContext, File)} does.
+     *
+     * @throws RendererException if it bombs.
+     * @throws IOException if it bombs.
+     */
+    public void render() throws RendererException, IOException {
+        locateDocuments();
+        siteRenderer.render(documentsBySource.values(), siteRenderingContext, outputDirectory);
+    }
+
+    /**
+     * Wait for changes in the site directories, then render the documents that changed.
+     *
+     * @param timeout how long to wait for a first change before giving up
+     * @param unit the time unit of the <code>timeout</code> argument
+     * @return the documents rendered, empty if no document changed before timeout
+     * @throws RendererException if it bombs.
+     * @throws IOException if it bombs.
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public Collection<DocumentRenderer> renderChanges(long timeout, TimeUnit unit)
+            throws RendererException, IOException, InterruptedException {
+        WatchKey key = watchService.poll(timeout, unit);
+        if (key == null) {
+            return Collections.emptyList();
+        }
+
+        Changes changes = new Changes();
+        do {
+            collectChanges(key, changes);
+        } while ((key = watchService.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS)) != null);
+
+        if (changes.structureChanged || changes.overflow) {
+            Map<Path, DocumentRenderer> previousDocuments = documentsBySource;
+            locateDocuments();
+            removeOutputs(previousDocuments);
+        }
+
+        List<DocumentRenderer> documents = new ArrayList<>();
+        if (changes.overflow) {
+            // events were lost: check all documents, relying on usual modification detection
+            documents.addAll(documentsBySource.values());
+        } else {
+            for (Path path : changes.paths) {
+                DocumentRenderer docRenderer = documentsBySource.get(path);
+                if (docRenderer == null) {
+                    warnIfSiteDescriptor(path);
+                } else if (docRenderer.getClass() == DoxiaDocumentRenderer.class) {
+                    // still a Doxia document, rendered concurrently
+                    documents.add(new DoxiaDocumentRenderer(docRenderer.getRenderingContext(), true));
+                } else {
+                    documents.add(new ChangedDocumentRenderer(docRenderer));
+                }
+            }
+        }
+
+        if (!documents.isEmpty()) {
+            long start = System.currentTimeMillis();
+            siteRenderer.render(documents, siteRenderingContext, outputDirectory);
+            LOGGER.info(
+                    "Rendered {} changed document{} in {} ms",
+                    documents.size(),
+                    documents.size() > 1 ? "s" : "",
+                    System.currentTimeMillis() - start);
+        }
+
+        return documents;
+    }
+
+    /**
+     * Stop watching the site directories and release the site rendering context.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            siteRenderer.releaseContext(siteRenderingContext);
+        } finally {
+            watchService.close();
+        }
+    }
+
+    private void warnIfSiteDescriptor(Path path) {
+        String fileName = path.getFileName().toString();
+        if (fileName.startsWith("site") && fileName.endsWith(".xml")) {
+            LOGGER.warn("{} changed: site descriptor changes require a new watch session to be rendered", path);
+        }
+    }
+
+    private void locateDocuments() throws RendererException, IOException {
+        Map<Path, DocumentRenderer> documents = new LinkedHashMap<>();
+        for (DocumentRenderer docRenderer : siteRenderer.locateDocumentFiles(siteRenderingContext).values()) {
+            documents.put(getSourcePath(docRenderer), docRenderer);
+        }
+        documentsBySource = documents;
+    }
+
+    private void removeOutputs(Map<Path, DocumentRenderer> previousDocuments) throws IOException {
+        for (Map.Entry<Path, DocumentRenderer> entry : previousDocuments.entrySet()) {
+            if (!documentsBySource.containsKey(entry.getKey())) {
+                File outputFile = new File(outputDirectory, entry.getValue().getOutputName());
+                LOGGER.debug("Removing {} as its source has been removed", outputFile);
+                Files.deleteIfExists(outputFile.toPath());
+            }
+        }
+    }
+
+    private void collectChanges(WatchKey key, Changes changes) throws IOException {
+        Path directory = watchedDirectories.get(key);
+
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW || directory == null) {
+                changes.overflow = true;
+                continue;
+            }
+
+            Path path = directory.resolve((Path) event.context()).toAbsolutePath().normalize();
+            if (event.kind() != StandardWatchEventKinds.ENTRY_MODIFY) {
+                changes.structureChanged = true;
+            }
+            if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(path)) {
+                // files may have been created before the new directory could be watched
+                changes.paths.addAll(watchTree(path));
+            } else {
+                changes.paths.add(path);
+            }
+        }
+
+        if (!key.reset()) {
+            watchedDirectories.remove(key);
+        }
+    }
+
+    private List<Path> watchTree(Path root) throws IOException {
+        List<Path> files = new ArrayList<>();
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                WatchKey key = dir.register(
+                        watchService,
+                        StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_MODIFY,
+                        StandardWatchEventKinds.ENTRY_DELETE);
+                watchedDirectories.put(key, dir.toAbsolutePath().normalize());
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                files.add(file.toAbsolutePath().normalize());
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return files;
+    }
+
+    private static Path getSourcePath(DocumentRenderer docRenderer) {
+        DocumentRenderingContext docRenderingContext = docRenderer.getRenderingContext();
+        return new File(docRenderingContext.getBasedir(), docRenderingContext.getInputPath())
+                .toPath()
+                .toAbsolutePath()
+                .normalize();
+    }
+
+    /**
+     * File changes collected from watch events.
+     */
+    private static class Changes {
+        private final Set<Path> paths = new LinkedHashSet<>();
+
+        private boolean structureChanged;
+
+        private boolean overflow;
+    }
+
+    /**
+     * Document other than a Doxia document known to have changed: forces rendering, as a change may happen within file
+     * system timestamp resolution of the previous rendering.
+     */
+    private static class ChangedDocumentRenderer implements DocumentRenderer {
+        private final DocumentRenderer docRenderer;
+
+        ChangedDocumentRenderer(DocumentRenderer docRenderer) {
+            this.docRenderer = docRenderer;
+        }
+
+        @Override
+        public void renderDocument(Writer writer, SiteRenderer siteRenderer, SiteRenderingContext siteRenderingContext)
+                throws IOException, RendererException {
+            docRenderer.renderDocument(writer, siteRenderer, siteRenderingContext);
+        }
+
+        @Override
+        public String getOutputPath() {
+            return docRenderer.getOutputPath();
+        }
+
+        @Override
+        public String getOutputName() {
+            return docRenderer.getOutputName();
+        }
+
+        @Override
+        public DocumentRenderingContext getRenderingContext() {
+            return docRenderer.getRenderingContext();
+        }
+
+        @Override
+        public boolean isOverwrite() {
+            return true;
+        }
+
+        @Override
+        public boolean isExternalReport() {
+            return docRenderer.isExternalReport();
+        }
+    }
+}
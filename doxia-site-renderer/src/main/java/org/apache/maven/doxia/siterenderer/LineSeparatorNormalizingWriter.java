@@ -0,0 +1,166 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.doxia.siterenderer;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.CharBuffer;
+
+/**
+ * Writer replacing <code>\n</code> and <code>\r\n</code> line separators with a given line separator while streaming
+ * to an underlying writer, a separator split over consecutive writes being handled. Lone <code>\r</code> characters
+ * are left as is.
+ * <p>
+ * Output is buffered: {@link #finish()} and {@link #close()} write the remaining content, {@link #flush()} only what
+ * is known not to be the start of a line separator.
+ *
+ * @since 2.2.0
+ */
+class LineSeparatorNormalizingWriter extends Writer {
+    private final Writer out;
+
+    private final char[] lineSeparator;
+
+    private final char[] buffer = new char[8192];
+
+    private int count;
+
+    /** {@code true} if the last character written was a <code>\r</code>, not written to the buffer yet */
+    private boolean pendingCarriageReturn;
+
+    LineSeparatorNormalizingWriter(Writer out, String lineSeparator) {
+        this.out = out;
+        this.lineSeparator = lineSeparator.toCharArray();
+    }
+
+    @Override
+    public void write(int c) throws IOException {
+        write((char) c);
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException {
+        write(CharBuffer.wrap(cbuf), off, len);
+    }
+
+    @Override
+    public void write(String str, int off, int len) throws IOException {
+        write((CharSequence) str, off, len);
+    }
+
+    /**
+     * Write characters, copying runs without line separator in bulk.
+     */
+    private void write(CharSequence chars, int off, int len) throws IOException {
+        int start = off;
+        int end = off + len;
+        for (int i = off; i < end; i++) {
+            char c = chars.charAt(i);
+            if (c == '\r' || c == '\n' || pendingCarriageReturn) {
+                putRun(chars, start, i);
+                write(c);
+                start = i + 1;
+            }
+        }
+        putRun(chars, start, end);
+    }
+
+    private void write(char c) throws IOException {
+        if (pendingCarriageReturn) {
+            pendingCarriageReturn = false;
+            if (c == '\n') {
+                writeLineSeparator();
+                return;
+            }
+            put('\r');
+        }
+
+        if (c == '\r') {
+            pendingCarriageReturn = true;
+        } else if (c == '\n') {
+            writeLineSeparator();
+        } else {
+            put(c);
+        }
+    }
+
+    private void writeLineSeparator() throws IOException {
+        for (char c : lineSeparator) {
+            put(c);
+        }
+    }
+
+    private void put(char c) throws IOException {
+        if (count == buffer.length) {
+            flushBuffer();
+        }
+        buffer[count++] = c;
+    }
+
+    private void putRun(CharSequence chars, int start, int end) throws IOException {
+        while (start < end) {
+            if (count == buffer.length) {
+                flushBuffer();
+            }
+            int n = Math.min(end - start, buffer.length - count);
+            if (chars instanceof String) {
+                ((String) chars).getChars(start, start + n, buffer, count);
+            } else {
+                for (int i = 0; i < n; i++) {
+                    buffer[count + i] = chars.charAt(start + i);
+                }
+            }
+            count += n;
+            start += n;
+        }
+    }
+
+    private void flushBuffer() throws IOException {
+        out.write(buffer, 0, count);
+        count = 0;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        flushBuffer();
+        out.flush();
+    }
+
+    /**
+     * Write the remaining content and flush the underlying writer, without closing it.
+     *
+     * @throws IOException if the underlying writer fails
+     */
+    void finish() throws IOException {
+        if (pendingCarriageReturn) {
+            pendingCarriageReturn = false;
+            put('\r');
+        }
+        flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            finish();
+        } finally {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.doxia.siterenderer;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Document content cache kept in memory, for a long-lived site rendering context like in watch mode, or for
+ * site rendering contexts sharing the same documents like locales of a site.
+ * It can be layered over another cache, like a {@link FileDocumentContentCache}.
+ *
+ * @since 2.2.0
+ */
+public class MemoryDocumentContentCache implements DocumentContentCache {
+    private final Map<String, ParsedDocumentContent> contents;
+
+    private final DocumentContentCache backingCache;
+
+    /**
+     * Create an empty document content cache.
+     */
+    public MemoryDocumentContentCache() {
+        this(null);
+    }
+
+    /**
+     * Create a document content cache layered over another one: document contents not found in memory are looked up
+     * in the backing cache, and stored document contents are stored in both.
+     *
+     * @param backingCache the backing cache, may be <code>null</code>
+     */
+    public MemoryDocumentContentCache(DocumentContentCache backingCache) {
+        this(new ConcurrentHashMap<>(), backingCache);
+    }
+
+    MemoryDocumentContentCache(Map<String, ParsedDocumentContent> contents, DocumentContentCache backingCache) {
+        this.contents = contents;
+        this.backingCache = backingCache;
+    }
+
+    /** {@inheritDoc} */
+    public ParsedDocumentContent get(String key) throws IOException {
+        ParsedDocumentContent content = contents.get(key);
+        if (content == null && backingCache != null) {
+            content = backingCache.get(key);
+            if (content != null) {
+                contents.put(key, content);
+            }
+        }
+        return content;
+    }
+
+    /** {@inheritDoc} */
+    public void put(String key, ParsedDocumentContent content) throws IOException {
+        contents.put(key, content);
+        if (backingCache != null) {
+            backingCache.put(key, content);
+        }
+    }
+
+    /**
+     * Remove every document content cached in memory, the backing cache being left untouched.
+     */
+    public void clear() {
+        contents.clear();
+    }
+}
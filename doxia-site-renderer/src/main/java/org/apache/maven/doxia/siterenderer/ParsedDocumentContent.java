@@ -0,0 +1,104 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.doxia.siterenderer;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Document content resulting from the parsing phase of a document rendering, detached from the parser and sink used
+ * to produce it: it can be kept and merged into a site template later, even in another build when serialized.
+ * The rendering context is not serialized and has to be attached again to the deserialized content.
+ *
+ * @since 2.2.0
+ * @see DefaultSiteRenderer#parseDocument(DocumentRenderingContext, SiteRenderingContext)
+ */
+public class ParsedDocumentContent implements DocumentContent, Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final String title;
+
+    private final String date;
+
+    private final List<String> authors;
+
+    private final String head;
+
+    private final String body;
+
+    private final transient DocumentRenderingContext renderingContext;
+
+    /**
+     * Copy a document content.
+     *
+     * @param content the document content to copy
+     * @param renderingContext the document rendering context to attach to the copy
+     */
+    public ParsedDocumentContent(DocumentContent content, DocumentRenderingContext renderingContext) {
+        this.title = content.getTitle();
+        this.date = content.getDate();
+        this.authors = (content.getAuthors() == null)
+                ? Collections.emptyList()
+                : Collections.unmodifiableList(new ArrayList<>(content.getAuthors()));
+        this.head = content.getHead();
+        this.body = content.getBody();
+        this.renderingContext = renderingContext;
+    }
+
+    ParsedDocumentContent(String title, String date, List<String> authors, String head, String body) {
+        this.title = title;
+        this.date = date;
+        this.authors = Collections.unmodifiableList(authors);
+        this.head = head;
+        this.body = body;
+        this.renderingContext = null;
+    }
+
+    /** {@inheritDoc} */
+    public String getTitle() {
+        return title;
+    }
+
+    /** {@inheritDoc} */
+    public String getDate() {
+        return date;
+    }
+
+    /** {@inheritDoc} */
+    public List<String> getAuthors() {
+        return authors;
+    }
+
+    /** {@inheritDoc} */
+    public String getHead() {
+        return head;
+    }
+
+    /** {@inheritDoc} */
+    public String getBody() {
+        return body;
+    }
+
+    /** {@inheritDoc} */
+    public DocumentRenderingContext getRenderingContext() {
+        return renderingContext;
+    }
+}
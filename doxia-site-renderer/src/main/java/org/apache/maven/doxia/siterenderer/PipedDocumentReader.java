@@ -0,0 +1,298 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.doxia.siterenderer;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reader of a document content written by a producer running in another thread, like a Velocity merge: the content
+ * is handed over through a bounded queue of chunks, so it is parsed while it is produced without ever being buffered
+ * as a whole. The content can be copied to another writer as it is produced.
+ * Producers run on a pool of daemon threads shared by all the readers, bounded by the number of processors: as a
+ * running producer only waits for its reader, producers waiting for a thread delay their readers without blocking
+ * the others, provided each reader is read by its own thread. Idle threads are stopped.
+ *
+ * @since 2.2.0
+ */
+final class PipedDocumentReader extends Reader {
+    private static final int CHUNK_SIZE = 8192;
+
+    /** at most 16 chunks of 8K characters waiting to be read */
+    private static final int MAX_PENDING_CHUNKS = 16;
+
+    private static final char[] END = new char[0];
+
+    private static final ThreadPoolExecutor PRODUCERS;
+
+    static {
+        AtomicInteger threadCount = new AtomicInteger();
+        int threads = Runtime.getRuntime().availableProcessors();
+        PRODUCERS = new ThreadPoolExecutor(
+                threads, threads, 30L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+                    Thread thread = new Thread(runnable, "doxia-content-producer-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        PRODUCERS.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Producer of the document content.
+     */
+    interface Producer {
+        /**
+         * Write the document content.
+         *
+         * @param writer the writer to write the content to
+         * @throws IOException if the content cannot be written
+         */
+        void produce(Writer writer) throws IOException;
+    }
+
+    private final BlockingQueue<char[]> chunks = new ArrayBlockingQueue<>(MAX_PENDING_CHUNKS);
+
+    private final Writer copy;
+
+    private final CountDownLatch produced = new CountDownLatch(1);
+
+    private volatile boolean closed;
+
+    private volatile Throwable failure;
+
+    private char[] chunk;
+
+    private int chunkPosition;
+
+    /**
+     * Start producing a document content in a shared producer thread, which uses the context class loader of the
+     * caller.
+     *
+     * @param name the name of the producer thread while it produces the content
+     * @param copy a writer to copy the content to, may be <code>null</code>: it is closed once the content is produced
+     * @param producer the document content producer
+     * @return the reader of the content
+     */
+    static PipedDocumentReader start(String name, Writer copy, Producer producer) {
+        PipedDocumentReader reader = new PipedDocumentReader(copy);
+        ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+        PRODUCERS.execute(() -> reader.produce(name, classLoader, producer));
+        return reader;
+    }
+
+    private PipedDocumentReader(Writer copy) {
+        this.copy = copy;
+    }
+
+    private void produce(String name, ClassLoader classLoader, Producer producer) {
+        Thread thread = Thread.currentThread();
+        String threadName = thread.getName();
+        thread.setName(name);
+        thread.setContextClassLoader(classLoader);
+        ChunkWriter writer = new ChunkWriter();
+        try {
+            producer.produce(writer);
+            writer.flush();
+            if (copy != null) {
+                copy.close();
+            }
+        } catch (Throwable t) {
+            // the failure must be known before the end of the content is read
+            failure = t;
+            if (copy != null) {
+                try {
+                    copy.close();
+                } catch (IOException e) {
+                    t.addSuppressed(e);
+                }
+            }
+        } finally {
+            try {
+                put(END);
+            } catch (IOException e) {
+                // closed by the reader: nobody is waiting for the end
+            }
+            thread.setName(threadName);
+            thread.setContextClassLoader(null);
+            produced.countDown();
+        }
+    }
+
+    @Override
+    public int read(char[] cbuf, int off, int len) throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+        if (len == 0) {
+            return 0;
+        }
+        while (chunk == null || chunkPosition == chunk.length) {
+            if (chunk == END) {
+                if (failure != null) {
+                    throw new IOException("Error while producing the document content", failure);
+                }
+                return -1;
+            }
+            try {
+                chunk = chunks.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+            chunkPosition = 0;
+        }
+
+        int n = Math.min(len, chunk.length - chunkPosition);
+        System.arraycopy(chunk, chunkPosition, cbuf, off, n);
+        chunkPosition += n;
+        return n;
+    }
+
+    /**
+     * Stop reading: the producer fails on its next write if it did not complete yet.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        chunks.clear();
+    }
+
+    /**
+     * Close the reader and wait for the producer to complete.
+     *
+     * @return the producer failure, or <code>null</code> if the content was completely produced or if the producer
+     *         was only stopped by the reader being closed
+     * @throws InterruptedIOException if interrupted while waiting
+     */
+    Throwable awaitProducer() throws InterruptedIOException {
+        close();
+        try {
+            produced.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+
+        // the closed reader failure may have been wrapped by the producer
+        for (Throwable cause = failure; cause != null; cause = cause.getCause()) {
+            if (cause instanceof ReaderClosedException) {
+                return null;
+            }
+        }
+        return failure;
+    }
+
+    private void put(char[] chunk) throws IOException {
+        try {
+            while (!chunks.offer(chunk, 100, TimeUnit.MILLISECONDS)) {
+                if (closed) {
+                    throw new ReaderClosedException();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+    }
+
+    /**
+     * Failure of the producer when the reader has been closed before the whole content was read.
+     */
+    private static class ReaderClosedException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        ReaderClosedException() {
+            super("Document content reader closed");
+        }
+    }
+
+    /**
+     * Writer handing over the content to the reader by chunks.
+     */
+    private class ChunkWriter extends Writer {
+        private char[] buffer = new char[CHUNK_SIZE];
+
+        private int length;
+
+        @Override
+        public void write(char[] cbuf, int off, int len) throws IOException {
+            while (len > 0) {
+                int n = Math.min(len, CHUNK_SIZE - length);
+                System.arraycopy(cbuf, off, buffer, length, n);
+                length += n;
+                off += n;
+                len -= n;
+                if (length == CHUNK_SIZE) {
+                    handOver(buffer);
+                    buffer = new char[CHUNK_SIZE];
+                    length = 0;
+                }
+            }
+        }
+
+        @Override
+        public void write(String str, int off, int len) throws IOException {
+            while (len > 0) {
+                int n = Math.min(len, CHUNK_SIZE - length);
+                str.getChars(off, off + n, buffer, length);
+                length += n;
+                off += n;
+                len -= n;
+                if (length == CHUNK_SIZE) {
+                    handOver(buffer);
+                    buffer = new char[CHUNK_SIZE];
+                    length = 0;
+                }
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (length > 0) {
+                handOver(Arrays.copyOf(buffer, length));
+                length = 0;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+
+        private void handOver(char[] content) throws IOException {
+            if (closed) {
+                throw new ReaderClosedException();
+            }
+            if (copy != null) {
+                copy.write(content);
+            }
+            put(content);
+        }
+    }
+}
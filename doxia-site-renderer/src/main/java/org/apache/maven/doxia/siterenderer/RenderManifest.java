@@ -0,0 +1,172 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.doxia.siterenderer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.doxia.site.io.xpp3.SiteXpp3Writer;
+
+/**
+ * Fingerprints of the inputs used to render the documents of an output directory, persisted in the render manifest
+ * directory of the site rendering context, outside the output directory so that it is never deployed with the site.
+ * It allows to re-render only the documents whose inputs really changed, whatever the timestamps of the files:
+ * a document fingerprint covers the document source content and parser id, and the site-wide inputs (skin, template,
+ * template properties, site model, locales, encodings and renderer version).
+ * <p>
+ * Template property values are fingerprinted through their {@code toString()} representation: values without a
+ * stable representation cause every document to be re-rendered, which is safe.
+ * <p>
+ * Files read by Doxia macros, like the files included by the snippet or include macros, are not part of the document
+ * fingerprint: a document is not re-rendered when only such a file changed.
+ *
+ * @since 2.2.0
+ */
+class RenderManifest {
+    private final File file;
+
+    private final String siteFingerprint;
+
+    /** document output path to fingerprint, {@link Properties} being thread-safe */
+    private final Properties fingerprints = new Properties();
+
+    private RenderManifest(File file, String siteFingerprint) {
+        this.file = file;
+        this.siteFingerprint = siteFingerprint;
+    }
+
+    /**
+     * Load the manifest of an output directory, an empty one being used if none exists yet.
+     *
+     * @param outputDirectory the site output directory
+     * @param siteRenderingContext the site rendering context, with a render manifest directory
+     * @param rendererVersion the site renderer version, may be {@code null}
+     * @return the render manifest
+     * @throws IOException if the manifest or the skin cannot be read
+     */
+    static RenderManifest load(File outputDirectory, SiteRenderingContext siteRenderingContext, String rendererVersion)
+            throws IOException {
+        RenderManifest manifest = new RenderManifest(
+                getFile(siteRenderingContext.getRenderManifestDirectory(), outputDirectory),
+                getSiteFingerprint(siteRenderingContext, rendererVersion));
+        if (manifest.file.isFile()) {
+            try (InputStream in = Files.newInputStream(manifest.file.toPath())) {
+                manifest.fingerprints.load(in);
+            }
+        }
+        return manifest;
+    }
+
+    /**
+     * Get the manifest file of an output directory: a render manifest directory may hold the manifests of several
+     * output directories, like the ones of the site locales.
+     *
+     * @param manifestDirectory the render manifest directory
+     * @param outputDirectory the site output directory
+     * @return the manifest file
+     */
+    static File getFile(File manifestDirectory, File outputDirectory) {
+        String outputDirectoryId = new Fingerprint().add(outputDirectory.getAbsolutePath()).toHex();
+        return new File(manifestDirectory, "render-manifest-" + outputDirectoryId + ".properties");
+    }
+
+    private static String getSiteFingerprint(SiteRenderingContext siteRenderingContext, String rendererVersion)
+            throws IOException {
+        Fingerprint fingerprint = new Fingerprint().add(rendererVersion);
+
+        Artifact skin = siteRenderingContext.getSkin();
+        fingerprint.add(skin == null ? null : skin.getId());
+        fingerprint.add(skin == null ? null : skin.getFile());
+        fingerprint.add(siteRenderingContext.getTemplateName());
+
+        Map<String, ?> templateProperties = siteRenderingContext.getTemplateProperties();
+        if (templateProperties != null) {
+            for (Map.Entry<String, ?> entry : new TreeMap<>(templateProperties).entrySet()) {
+                fingerprint.add(entry.getKey()).add(String.valueOf(entry.getValue()));
+            }
+        }
+
+        if (siteRenderingContext.getSiteModel() != null) {
+            StringWriter siteModel = new StringWriter();
+            new SiteXpp3Writer().write(siteModel, siteRenderingContext.getSiteModel());
+            fingerprint.add(siteModel.toString());
+        }
+
+        fingerprint.add(String.valueOf(siteRenderingContext.getLocale()));
+        fingerprint.add(String.valueOf(siteRenderingContext.getSiteLocales()));
+        fingerprint.add(siteRenderingContext.getInputEncoding());
+        fingerprint.add(siteRenderingContext.getOutputEncoding());
+        fingerprint.add(
+                siteRenderingContext.getPublishDate() == null
+                        ? null
+                        : String.valueOf(siteRenderingContext.getPublishDate().getTime()));
+
+        return fingerprint.toHex();
+    }
+
+    /**
+     * Compute the current fingerprint of a document rendered from a Doxia source.
+     *
+     * @param docRenderingContext the document rendering context
+     * @return the fingerprint of the document inputs
+     * @throws IOException if the document source cannot be read
+     */
+    String getFingerprint(DocumentRenderingContext docRenderingContext) throws IOException {
+        return new Fingerprint()
+                .add(siteFingerprint)
+                .add(docRenderingContext.getParserId())
+                .add(docRenderingContext.getInputPath())
+                .add(docRenderingContext.getAttribute("velocity"))
+                .add(new File(docRenderingContext.getBasedir(), docRenderingContext.getInputPath()))
+                .toHex();
+    }
+
+    boolean isUpToDate(String outputPath, String fingerprint) {
+        return fingerprint.equals(fingerprints.getProperty(outputPath));
+    }
+
+    /**
+     * Forget the fingerprint of a document, before rendering it: an interrupted rendering must not be seen
+     * as up to date.
+     *
+     * @param outputPath the document output path
+     */
+    void invalidate(String outputPath) {
+        fingerprints.remove(outputPath);
+    }
+
+    void update(String outputPath, String fingerprint) {
+        fingerprints.setProperty(outputPath, fingerprint);
+    }
+
+    void store() throws IOException {
+        file.getParentFile().mkdirs();
+        try (OutputStream out = Files.newOutputStream(file.toPath())) {
+            fingerprints.store(out, "Doxia Sitetools render manifest");
+        }
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.doxia.siterenderer;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Statistics about the output files of a site rendering, accumulated over all
+ * {@link SiteRenderer#render(java.util.Collection, SiteRenderingContext, java.io.File) render} calls with the same
+ * {@link SiteRenderingContext}.
+ *
+ * @since 2.2.0
+ * @see SiteRenderingContext#getRenderStatistics()
+ */
+public class RenderStatistics {
+    private final AtomicInteger writtenFiles = new AtomicInteger();
+
+    private final AtomicInteger unchangedFiles = new AtomicInteger();
+
+    /**
+     * Get the number of output files which have been (re)written.
+     *
+     * @return the number of written files
+     */
+    public int getWrittenFiles() {
+        return writtenFiles.get();
+    }
+
+    /**
+     * Get the number of rendered documents whose output file has been left untouched because its content did not
+     * change.
+     *
+     * @return the number of unchanged files, always {@code 0} if {@link SiteRenderingContext#isCompareBeforeWrite()}
+     *         is not set
+     */
+    public int getUnchangedFiles() {
+        return unchangedFiles.get();
+    }
+
+    void fileWritten() {
+        writtenFiles.incrementAndGet();
+    }
+
+    void fileUnchanged() {
+        unchangedFiles.incrementAndGet();
+    }
+
+    @Override
+    public String toString() {
+        return writtenFiles + " files written, " + unchangedFiles + " unchanged files not rewritten";
+    }
+}
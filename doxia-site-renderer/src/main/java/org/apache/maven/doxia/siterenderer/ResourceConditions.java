@@ -0,0 +1,308 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.doxia.siterenderer;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+import org.apache.maven.doxia.site.SiteModel;
+import org.apache.maven.doxia.site.io.xpp3.SiteXpp3Writer;
+import org.apache.maven.doxia.site.skin.ResourceCondition;
+import org.apache.maven.doxia.site.skin.SkinModel;
+import org.apache.velocity.Template;
+import org.apache.velocity.context.Context;
+import org.apache.velocity.exception.ParseErrorException;
+import org.apache.velocity.runtime.RuntimeServices;
+import org.apache.velocity.runtime.RuntimeSingleton;
+import org.apache.velocity.runtime.parser.ParseException;
+import org.apache.velocity.runtime.parser.node.ASTDirective;
+import org.apache.velocity.runtime.parser.node.ASTReference;
+import org.apache.velocity.runtime.parser.node.ASTStringLiteral;
+import org.apache.velocity.runtime.parser.node.Node;
+import org.codehaus.plexus.util.PathTool;
+import org.codehaus.plexus.util.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Resource conditions of a skin, each VTL condition being compiled once instead of being parsed again for every
+ * conditional resource of every module and locale.
+ * Evaluation results are memoized by condition and by fingerprint of the values the condition references, as long as
+ * these values are known to be plain data: contexts with the same referenced values reuse the result.
+ *
+ * @since 2.2.0
+ */
+final class ResourceConditions {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ResourceConditions.class);
+
+    private static final String LOG_TAG = "conditional-resource-evaluation";
+
+    /** conditions by resource name, resources of a same resource condition sharing the compiled condition */
+    private final Map<String, Condition> conditions;
+
+    /** evaluation results by condition and referenced values fingerprint */
+    private final Map<String, Boolean> results = new ConcurrentHashMap<>();
+
+    /**
+     * A VTL condition, compiled on first evaluation.
+     */
+    private static final class Condition {
+        private final String vtl;
+
+        private Template template;
+
+        /** root references of the condition, or <code>null</code> if its result cannot be memoized */
+        private Set<String> references;
+
+        private Condition(String vtl) {
+            this.vtl = vtl;
+        }
+
+        private synchronized Template getTemplate() {
+            if (template == null) {
+                RuntimeServices runtimeServices = RuntimeSingleton.getRuntimeServices();
+                Template compiled = new Template();
+                compiled.setName(LOG_TAG);
+                compiled.setRuntimeServices(runtimeServices);
+                try {
+                    compiled.setData(runtimeServices.parse(new StringReader(vtl), compiled));
+                } catch (ParseException e) {
+                    throw new ParseErrorException(e, LOG_TAG);
+                }
+                compiled.initDocument();
+
+                Set<String> roots = new TreeSet<>();
+                references = collectReferences((Node) compiled.getData(), roots) ? roots : null;
+                template = compiled;
+            }
+            return template;
+        }
+
+        private synchronized Set<String> getReferences() {
+            return references;
+        }
+    }
+
+    private ResourceConditions(Map<String, Condition> conditions) {
+        this.conditions = conditions;
+    }
+
+    /**
+     * Create the resource conditions of a skin.
+     *
+     * @param skinModel the skin model, may be <code>null</code>
+     * @return the resource conditions
+     */
+    static ResourceConditions create(SkinModel skinModel) {
+        if (skinModel == null) {
+            LOGGER.debug("No skin model provided, so no resource conditions will be applied.");
+            return new ResourceConditions(Collections.emptyMap());
+        }
+        Map<String, Condition> conditions = new HashMap<>();
+        for (ResourceCondition resource : skinModel.getResourceConditions()) {
+            if (resource.getVtlCondition() != null
+                    && !resource.getVtlCondition().isEmpty()) {
+                Condition condition = new Condition(resource.getVtlCondition());
+                for (String resourceName : resource.getResourceNames()) {
+                    if (conditions.containsKey(resourceName)) {
+                        LOGGER.warn(
+                                "Multiple conditions found for resource '{}'. Only the first one will be used.",
+                                resourceName);
+                        continue;
+                    }
+                    LOGGER.debug(
+                            "Adding condition for resource '{}' with condition '{}'",
+                            resourceName,
+                            escapeLineBreaksForLogging(resource.getVtlCondition()));
+                    conditions.put(resourceName, condition);
+                }
+            }
+        }
+        return new ResourceConditions(conditions);
+    }
+
+    /**
+     * Start evaluating resource conditions for a site rendering context.
+     *
+     * @param contextSupplier supplier of the Velocity context the conditions are evaluated with, only called if a
+     *            condition really needs to be evaluated
+     * @return the evaluation, not thread safe
+     */
+    Evaluation evaluate(Supplier<Context> contextSupplier) {
+        return new Evaluation(contextSupplier);
+    }
+
+    /**
+     * Evaluation of resource conditions with one Velocity context.
+     */
+    final class Evaluation {
+        private final Supplier<Context> contextSupplier;
+
+        private Context context;
+
+        /** fingerprints of the referenced values, computed once per evaluation */
+        private final Map<String, String> valueFingerprints = new HashMap<>();
+
+        private Evaluation(Supplier<Context> contextSupplier) {
+            this.contextSupplier = contextSupplier;
+        }
+
+        /**
+         * Check whether a resource should be copied.
+         *
+         * @param name the resource name
+         * @return <code>true</code> if the resource has no condition or if its condition evaluates to true
+         */
+        boolean isResourceRelevant(String name) {
+            Condition condition = conditions.get(name);
+            if (condition == null) {
+                LOGGER.debug("No condition for resource '{}'", name);
+                return true;
+            }
+
+            LOGGER.debug(
+                    "Evaluating condition for resource '{}' with condition '{}'",
+                    name,
+                    escapeLineBreaksForLogging(condition.vtl));
+            Template template = condition.getTemplate();
+            String key = getResultKey(condition);
+            Boolean relevant = (key == null) ? null : results.get(key);
+            if (relevant == null) {
+                StringWriter writer = new StringWriter();
+                template.merge(getContext(), writer);
+                String result = writer.toString().trim();
+                LOGGER.debug("Condition evaluation result: {}", result);
+                relevant = Boolean.parseBoolean(result);
+                if (key != null) {
+                    results.put(key, relevant);
+                }
+            } else {
+                LOGGER.debug("Condition evaluation result already known: {}", relevant);
+            }
+
+            if (!relevant) {
+                LOGGER.debug("Excluding resource '{}'", name);
+            }
+            return relevant;
+        }
+
+        private Context getContext() {
+            if (context == null) {
+                context = contextSupplier.get();
+            }
+            return context;
+        }
+
+        private String getResultKey(Condition condition) {
+            Set<String> references = condition.getReferences();
+            if (references == null) {
+                return null;
+            }
+
+            Fingerprint fingerprint = new Fingerprint().add(condition.vtl);
+            for (String reference : references) {
+                String value = valueFingerprints.computeIfAbsent(reference, r -> fingerprintValue(getContext().get(r)));
+                if (value.isEmpty()) {
+                    return null;
+                }
+                fingerprint.add(reference).add(value);
+            }
+            return fingerprint.toHex();
+        }
+    }
+
+    /**
+     * Collect the root references of a condition.
+     *
+     * @param node the condition syntax tree
+     * @param roots the root references
+     * @return <code>false</code> if the condition may read values not found as root references, like in macros
+     *         or in interpolated string literals
+     */
+    private static boolean collectReferences(Node node, Set<String> roots) {
+        if (node instanceof ASTReference) {
+            roots.add(((ASTReference) node).getRootString());
+        } else if (node instanceof ASTStringLiteral) {
+            String literal = node.literal();
+            if (literal.indexOf('$') >= 0 || literal.indexOf('#') >= 0) {
+                return false;
+            }
+        } else if (node instanceof ASTDirective) {
+            // macros and directives like #parse or #evaluate may read anything
+            return false;
+        }
+        for (int i = 0; i < node.jjtGetNumChildren(); i++) {
+            if (!collectReferences(node.jjtGetChild(i), roots)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Fingerprint a value referenced by a condition.
+     *
+     * @param value the value
+     * @return the value fingerprint, or an empty string if the value is not known to be plain data
+     */
+    private static String fingerprintValue(Object value) {
+        if (value == null) {
+            return "null";
+        }
+        if (value instanceof String
+                || value instanceof Number
+                || value instanceof Boolean
+                || value instanceof Character
+                || value instanceof Enum
+                || value instanceof Locale) {
+            return value.getClass().getName() + ':' + value;
+        }
+        if (value instanceof Date) {
+            return value.getClass().getName() + ':' + ((Date) value).getTime();
+        }
+        if (value instanceof PathTool || value instanceof StringUtils) {
+            // stateless helpers
+            return value.getClass().getName();
+        }
+        if (value instanceof SiteModel) {
+            StringWriter siteModel = new StringWriter();
+            try {
+                new SiteXpp3Writer().write(siteModel, (SiteModel) value);
+            } catch (IOException e) {
+                return "";
+            }
+            return value.getClass().getName() + ':' + siteModel;
+        }
+        return "";
+    }
+
+    private static String escapeLineBreaksForLogging(String input) {
+        return input.replaceAll("\\r?\\n", "\\\\n");
+    }
+}
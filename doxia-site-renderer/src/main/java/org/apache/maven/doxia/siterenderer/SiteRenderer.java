@@ -46,6 +46,28 @@ public interface SiteRenderer {
     void render(Collection<DocumentRenderer> documents, SiteRenderingContext siteRenderingContext, File outputDirectory)
             throws RendererException, IOException;
 
+    /**
+     * Render the Doxia documents of a site built in several locales, each locale having its own site rendering
+     * context: documents located in the site directories, which are often shared by locales without translation,
+     * are parsed only once and merged into the site template of each locale.
+     * Other documents, like reports, are to be rendered per locale with
+     * {@link #render(Collection, SiteRenderingContext, File)}.
+     * <p>
+     * The default implementation renders each locale in turn with
+     * {@link #render(Collection, SiteRenderingContext, File)}, without sharing parsed documents.
+     *
+     * @param outputDirectories the output directory of each locale site rendering context, in rendering order
+     * @throws RendererException if it bombs.
+     * @throws IOException if it bombs.
+     * @since 2.2.0
+     */
+    default void renderLocales(Map<SiteRenderingContext, File> outputDirectories)
+            throws RendererException, IOException {
+        for (Map.Entry<SiteRenderingContext, File> entry : outputDirectories.entrySet()) {
+            render(locateDocumentFiles(entry.getKey()).values(), entry.getKey(), entry.getValue());
+        }
+    }
+
     /**
      * Generate a document output integrated in a site from a document content,
      * i.e. merge the document content into the site template.
@@ -77,6 +99,41 @@ public interface SiteRenderer {
             Artifact skin, Map<String, ?> attributes, SiteModel siteModel, String defaultTitle, Locale locale)
             throws RendererException, IOException;
 
+    /**
+     * Open a Site Rendering Context for a site rendered in several passes, like documents then reports: the skin class
+     * loader and the site resources of context customizers are kept from one rendering to the next, and context
+     * customizers are only notified that the site is rendered when the context is released with
+     * {@link #releaseContext(SiteRenderingContext)}. Without it, each rendering is a whole site rendering, releasing
+     * them at its end.
+     *
+     * @param siteRenderingContext the context about to be rendered
+     * @throws IOException if the skin cannot be opened
+     * @since 2.2.0
+     */
+    default void openContext(SiteRenderingContext siteRenderingContext) throws IOException {}
+
+    /**
+     * Release a Site Rendering Context created with
+     * {@link #createContextForSkin(Artifact, Map, SiteModel, String, Locale)}: the class loader, descriptor and
+     * compiled template of a skin are shared by every context created for the same skin file. Unless the context was
+     * opened with {@link #openContext(SiteRenderingContext)}, the skin class loader is already released at the end of
+     * each rendering, and opened again if the context is used again. Releasing the context releases the compiled
+     * templates of the Velocity processed documents it rendered, unless another context still uses them, and notifies
+     * context customizers that the site is rendered with {@link ContextCustomizer#afterSite(SiteRenderingContext)}.
+     *
+     * @param siteRenderingContext the context that won't be used any more
+     * @since 2.2.0
+     */
+    default void releaseContext(SiteRenderingContext siteRenderingContext) {}
+
+    /**
+     * Forget the skins no longer used by any Site Rendering Context, instead of keeping their descriptor and compiled
+     * template for the next contexts created for them.
+     *
+     * @since 2.2.0
+     */
+    default void evictUnusedSkins() {}
+
     /**
      * Copy resource files from skin, template, and site resources.
      *
@@ -28,11 +28,15 @@ import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
 
 import org.apache.maven.artifact.Artifact;
 import org.apache.maven.doxia.parser.Parser;
 import org.apache.maven.doxia.site.SiteModel;
 import org.apache.maven.doxia.site.skin.SkinModel;
+import org.apache.velocity.Template;
+import org.apache.velocity.tools.ToolManager;
 import org.codehaus.plexus.util.ReaderFactory;
 import org.codehaus.plexus.util.WriterFactory;
 
@@ -146,7 +150,44 @@ public class SiteRenderingContext {
 
     private ParserConfigurator parserConfigurator;
 
-    private final Map<String, Object> attributes = new HashMap<>();
+    private int parallelism = 1;
+
+    private File renderManifestDirectory;
+
+    private boolean compareBeforeWrite;
+
+    private final RenderStatistics renderStatistics = new RenderStatistics();
+
+    private boolean profileTemplate;
+
+    private final TemplateProfile templateProfile = new TemplateProfile();
+
+    private DocumentContentCache documentContentCache;
+
+    /** compiled site template, reused for every document merged with this context */
+    private volatile Template siteTemplate;
+
+    /** Velocity tool managers, reused for every document rendered with this context */
+    private final Map<List<Object>, ToolManager> toolManagers = new ConcurrentHashMap<>();
+
+    /** skin shared with other contexts, when created for a skin by the site renderer */
+    private volatile SkinRegistry.Skin registeredSkin;
+
+    /** whether this context holds a reference to its registered skin, guarded by this */
+    private boolean registeredSkinAcquired;
+
+    /** site level Velocity context values, shared by every document rendered with this context */
+    private volatile Map<String, Object> siteVelocityValues;
+
+    /** whether context customizers were notified that the site rendering started */
+    private volatile boolean siteStarted;
+
+    /** whether the site is rendered in several passes, the skin and site resources being kept until released */
+    private volatile boolean opened;
+
+    private final Map<Class<?>, Object> siteStates = new ConcurrentHashMap<>();
+
+    private final Map<String, Object> attributes = Collections.synchronizedMap(new HashMap<>());
 
     /**
      * If input documents should be validated before parsing.
@@ -194,6 +235,7 @@ public class SiteRenderingContext {
      */
     public void setTemplateClassLoader(ClassLoader templateClassLoader) {
         this.templateClassLoader = templateClassLoader;
+        this.siteTemplate = null;
     }
 
     /**
@@ -212,6 +254,7 @@ public class SiteRenderingContext {
      */
     public void setTemplateProperties(Map<String, ?> templateProperties) {
         this.templateProperties = Collections.unmodifiableMap(templateProperties);
+        this.siteVelocityValues = null;
     }
 
     /**
@@ -230,6 +273,7 @@ public class SiteRenderingContext {
      */
     public void setLocale(Locale locale) {
         this.locale = locale;
+        this.siteVelocityValues = null;
     }
 
     /**
@@ -249,6 +293,7 @@ public class SiteRenderingContext {
      */
     public void addSiteLocales(List<Locale> locales) {
         siteLocales.addAll(locales);
+        this.siteVelocityValues = null;
     }
 
     /**
@@ -267,6 +312,7 @@ public class SiteRenderingContext {
      */
     public void setSiteModel(SiteModel siteModel) {
         this.siteModel = siteModel;
+        this.siteVelocityValues = null;
     }
 
     /**
@@ -321,6 +367,7 @@ public class SiteRenderingContext {
      */
     public void setSkinModel(SkinModel skinModel) {
         this.skinModel = skinModel;
+        this.siteTemplate = null;
     }
 
     /**
@@ -330,6 +377,7 @@ public class SiteRenderingContext {
      */
     public void setTemplateName(String templateName) {
         this.templateName = templateName;
+        this.siteTemplate = null;
     }
 
     /**
@@ -430,6 +478,7 @@ public class SiteRenderingContext {
      */
     public void setPublishDate(Date publishDate) {
         this.publishDate = publishDate;
+        this.siteVelocityValues = null;
     }
 
     /**
@@ -492,6 +541,263 @@ public class SiteRenderingContext {
         this.parserConfigurator = parserConfigurator;
     }
 
+    /**
+     * Return the number of documents which are rendered concurrently.
+     *
+     * @return the maximum number of rendering threads, {@code 1} (the default) for sequential rendering
+     * @since 2.2.0
+     */
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Set the number of documents which may be rendered concurrently.
+     * Only documents rendered from a Doxia source are rendered in parallel, every other document is still rendered
+     * by the calling thread. The output is the same as with sequential rendering.
+     *
+     * @param parallelism the maximum number of rendering threads, must be at least {@code 1}
+     * @since 2.2.0
+     */
+    public void setParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1, but was " + parallelism);
+        }
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Get the directory where render manifests are stored, if used to detect modified documents.
+     *
+     * @return the render manifest directory, or {@code null} (the default) if documents are re-rendered based on file
+     *         modification times
+     * @since 2.2.0
+     */
+    public File getRenderManifestDirectory() {
+        return renderManifestDirectory;
+    }
+
+    /**
+     * Set the directory where render manifests are stored, to detect modified documents from the content of their
+     * inputs. The manifest of an output directory records a fingerprint of the inputs of every document rendered from
+     * a Doxia source (source content, parser, skin, template properties, site model...): a document is only
+     * re-rendered when this fingerprint changed, or when its output is missing. This is reliable after a fresh
+     * checkout, a restored build cache or clock skew, contrary to the default modification time based detection.
+     * Files read by Doxia macros, like snippets, are not part of the fingerprint.
+     * <p>
+     * The directory must be outside the output directories, for the manifests not to be deployed with the site, for
+     * example in the build directory: it may hold the manifests of several output directories.
+     *
+     * @param renderManifestDirectory the render manifest directory, or {@code null} to not use render manifests
+     * @since 2.2.0
+     */
+    public void setRenderManifestDirectory(File renderManifestDirectory) {
+        this.renderManifestDirectory = renderManifestDirectory;
+    }
+
+    /**
+     * Whether a rendered document output file is only written when its content changed.
+     *
+     * @return {@code true} if existing output files with identical content are left untouched
+     * @since 2.2.0
+     */
+    public boolean isCompareBeforeWrite() {
+        return compareBeforeWrite;
+    }
+
+    /**
+     * Switch on/off comparing rendered output with the existing output file before writing it. When switched on, an
+     * existing output file with the same content as the rendered one is left untouched, including its modification
+     * time, which avoids deploying unchanged files with synchronization tools. Written and unchanged files are counted
+     * in {@link #getRenderStatistics()}.
+     *
+     * @param compareBeforeWrite {@code true} to leave identical output files untouched
+     * @since 2.2.0
+     */
+    public void setCompareBeforeWrite(boolean compareBeforeWrite) {
+        this.compareBeforeWrite = compareBeforeWrite;
+    }
+
+    /**
+     * Get the statistics about the output files written while rendering with this context.
+     *
+     * @return the render statistics, never {@code null}
+     * @since 2.2.0
+     */
+    public RenderStatistics getRenderStatistics() {
+        return renderStatistics;
+    }
+
+    /**
+     * Whether the site template rendering is profiled.
+     *
+     * @return {@code true} if time spent in each directive and macro of the site template is measured
+     * @since 2.2.0
+     */
+    public boolean isProfileTemplate() {
+        return profileTemplate;
+    }
+
+    /**
+     * Switch on/off site template profiling. When switched on, the time spent parsing documents, merging them into
+     * the site template and in each Velocity directive or macro of the site template is accumulated in
+     * {@link #getTemplateProfile()}, and reported after every render. Profiling has a cost: don't use it for
+     * production builds.
+     *
+     * @param profileTemplate {@code true} to profile the site template
+     * @since 2.2.0
+     */
+    public void setProfileTemplate(boolean profileTemplate) {
+        this.profileTemplate = profileTemplate;
+        this.siteTemplate = null;
+    }
+
+    /**
+     * Get the site template profile accumulated while rendering with this context.
+     *
+     * @return the template profile, never {@code null}, empty if {@link #isProfileTemplate()} was never set
+     * @since 2.2.0
+     */
+    public TemplateProfile getTemplateProfile() {
+        return templateProfile;
+    }
+
+    /**
+     * Cache of parsed document contents, if any.
+     *
+     * @return the document content cache, or {@code null} if documents are always parsed
+     * @since 2.2.0
+     */
+    public DocumentContentCache getDocumentContentCache() {
+        return documentContentCache;
+    }
+
+    /**
+     * Set a cache of parsed document contents: documents with unchanged sources are then not parsed again,
+     * only merged into the site template.
+     *
+     * @param documentContentCache the document content cache, {@code null} to always parse documents
+     * @since 2.2.0
+     */
+    public void setDocumentContentCache(DocumentContentCache documentContentCache) {
+        this.documentContentCache = documentContentCache;
+    }
+
+    /**
+     * Compiled site template, once loaded from the skin: keeping it avoids parsing the skin template again
+     * for every document.
+     *
+     * @return the compiled site template, or <code>null</code> if not loaded yet
+     */
+    Template getSiteTemplate() {
+        return siteTemplate;
+    }
+
+    void setSiteTemplate(Template siteTemplate) {
+        this.siteTemplate = siteTemplate;
+    }
+
+    /**
+     * Velocity tool managers configured for this context, keyed by their configuration.
+     *
+     * @return the tool managers
+     */
+    Map<List<Object>, ToolManager> getToolManagers() {
+        return toolManagers;
+    }
+
+    /**
+     * Skin shared with the other contexts created for it, acquired while this context is used and released at the
+     * end of each rendering.
+     *
+     * @return the registered skin, or <code>null</code> if this context was not created for a skin
+     */
+    SkinRegistry.Skin getRegisteredSkin() {
+        return registeredSkin;
+    }
+
+    void setRegisteredSkin(SkinRegistry.Skin registeredSkin) {
+        this.registeredSkin = registeredSkin;
+    }
+
+    boolean isRegisteredSkinAcquired() {
+        return registeredSkinAcquired;
+    }
+
+    void setRegisteredSkinAcquired(boolean registeredSkinAcquired) {
+        this.registeredSkinAcquired = registeredSkinAcquired;
+    }
+
+    /**
+     * Immutable Velocity context values that don't depend on the rendered document, computed once and reset
+     * whenever one of the site level values they are built from changes.
+     *
+     * @return the site level Velocity context values, or <code>null</code> if not computed yet
+     */
+    Map<String, Object> getSiteVelocityValues() {
+        return siteVelocityValues;
+    }
+
+    void setSiteVelocityValues(Map<String, Object> siteVelocityValues) {
+        this.siteVelocityValues = siteVelocityValues;
+    }
+
+    boolean isSiteStarted() {
+        return siteStarted;
+    }
+
+    void setSiteStarted(boolean siteStarted) {
+        this.siteStarted = siteStarted;
+    }
+
+    boolean isOpened() {
+        return opened;
+    }
+
+    void setOpened(boolean opened) {
+        this.opened = opened;
+    }
+
+    /**
+     * Get a state kept for the site rendering, like the resources a {@link ContextCustomizer} acquired in
+     * {@link ContextCustomizer#beforeSite(SiteRenderingContext)}. States are keyed by their type, which is usually
+     * private to their owner.
+     *
+     * @param <T> the state type
+     * @param type the state type
+     * @return the state, or {@code null} if none was set
+     * @since 2.2.0
+     */
+    public <T> T getSiteState(Class<T> type) {
+        return type.cast(siteStates.get(type));
+    }
+
+    /**
+     * Get a state kept for the site rendering, creating it if none is set yet. Creation is atomic: concurrent calls
+     * wait for the state created by the first one.
+     *
+     * @param <T> the state type
+     * @param type the state type
+     * @param factory creates the state, may return {@code null} to keep no state
+     * @return the state
+     * @since 2.2.0
+     */
+    public <T> T computeSiteStateIfAbsent(Class<T> type, Supplier<? extends T> factory) {
+        return type.cast(siteStates.computeIfAbsent(type, key -> factory.get()));
+    }
+
+    /**
+     * Remove a state kept for the site rendering, usually in {@link ContextCustomizer#afterSite(SiteRenderingContext)}.
+     *
+     * @param <T> the state type
+     * @param type the state type
+     * @return the removed state, or {@code null} if none was set
+     * @since 2.2.0
+     */
+    public <T> T removeSiteState(Class<T> type) {
+        return type.cast(siteStates.remove(type));
+    }
+
     /**
      * Gets the map of attributes that can be used to cache items per site rendering context.
      * This is a free-form map that can be used for example
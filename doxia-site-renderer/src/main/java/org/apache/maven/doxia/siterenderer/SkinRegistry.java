@@ -0,0 +1,254 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.doxia.siterenderer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+
+import org.apache.maven.doxia.site.skin.SkinModel;
+import org.apache.maven.doxia.site.skin.io.xpp3.SkinXpp3Reader;
+import org.apache.velocity.Template;
+import org.codehaus.plexus.util.xml.pull.XmlPullParserException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Registry of the skins used by site rendering contexts, keyed by skin file path and checksum: every context created
+ * for the same skin shares its class loader, skin model and compiled site template, instead of loading them again for
+ * every module and locale.
+ * Skins are reference counted: the class loader of a skin is closed as soon as no context uses it, and opened again
+ * for the next one. The skin model and compiled site template stay available for the next contexts until the skin is
+ * evicted. The skin zip file is only opened while reading the skin descriptor.
+ *
+ * @since 2.2.0
+ */
+final class SkinRegistry {
+    private static final Logger LOGGER = LoggerFactory.getLogger(SkinRegistry.class);
+
+    /** registered skins by absolute file path, guarded by this */
+    private final Map<String, Skin> skins = new HashMap<>();
+
+    /**
+     * A skin shared by site rendering contexts.
+     */
+    static final class Skin {
+        private final File file;
+
+        private final String checksum;
+
+        private final SkinModel skinModel;
+
+        /** class loader, opened while the skin is used by a context, guarded by the registry */
+        private volatile URLClassLoader classLoader;
+
+        private volatile Template template;
+
+        private volatile ResourceConditions resourceConditions;
+
+        /** file length and last modification time when the checksum was last verified, guarded by the registry */
+        private long length;
+
+        private long lastModified;
+
+        /** number of contexts using the skin, guarded by the registry */
+        private int references;
+
+        private Skin(File file, String checksum, SkinModel skinModel) {
+            this.file = file;
+            this.checksum = checksum;
+            this.skinModel = skinModel;
+            this.length = file.length();
+            this.lastModified = file.lastModified();
+        }
+
+        File getFile() {
+            return file;
+        }
+
+        /**
+         * @return the skin class loader, or <code>null</code> if the skin is not used by any context
+         */
+        ClassLoader getClassLoader() {
+            return classLoader;
+        }
+
+        /**
+         * @return the skin model read from the skin descriptor, or <code>null</code> if the skin has none
+         */
+        SkinModel getSkinModel() {
+            return skinModel;
+        }
+
+        /**
+         * @return the compiled site template, or <code>null</code> if not loaded yet
+         */
+        Template getTemplate() {
+            return template;
+        }
+
+        void setTemplate(Template template) {
+            this.template = template;
+        }
+
+        /**
+         * @return the compiled resource conditions of the skin model
+         */
+        ResourceConditions getResourceConditions() {
+            ResourceConditions conditions = resourceConditions;
+            if (conditions == null) {
+                conditions = ResourceConditions.create(skinModel);
+                resourceConditions = conditions;
+            }
+            return conditions;
+        }
+
+        private boolean isUnchanged() {
+            return file.length() == length && file.lastModified() == lastModified;
+        }
+
+        private void open() throws IOException {
+            if (classLoader == null) {
+                classLoader = new URLClassLoader(new URL[] {file.toURI().toURL()});
+            }
+        }
+
+        private void close() {
+            if (classLoader != null) {
+                try {
+                    classLoader.close();
+                } catch (IOException e) {
+                    LOGGER.debug("Cannot close class loader of skin " + file, e);
+                }
+                classLoader = null;
+            }
+        }
+    }
+
+    /**
+     * Acquire a reference to a skin, loading it if it is not registered yet or if its content changed since it was
+     * registered. Every acquired reference must be {@link #release(Skin) released}.
+     *
+     * @param file the skin file
+     * @param skinId the skin identifier, for error messages
+     * @return the registered skin
+     * @throws IOException if the skin cannot be read
+     * @throws RendererException if the skin is not a valid skin
+     */
+    synchronized Skin acquire(File file, String skinId) throws IOException, RendererException {
+        if (file == null) {
+            throw new IOException("Error opening ZipFile: null");
+        }
+
+        String path = file.getAbsolutePath();
+        Skin skin = skins.get(path);
+        if (skin == null || !skin.isUnchanged()) {
+            String checksum = new Fingerprint().add(file).toHex();
+            if (skin != null && skin.checksum.equals(checksum)) {
+                skin.length = file.length();
+                skin.lastModified = file.lastModified();
+            } else {
+                // a new version of the skin replaces the previous one, which contexts using it release as usual
+                skin = load(file, checksum, skinId);
+                skins.put(path, skin);
+            }
+        }
+
+        return acquire(skin);
+    }
+
+    /**
+     * Acquire another reference to a skin, opening its class loader again if it was closed since the skin was last
+     * used. Every acquired reference must be {@link #release(Skin) released}.
+     *
+     * @param skin the skin, previously acquired
+     * @return the skin
+     * @throws IOException if the skin class loader cannot be opened
+     */
+    synchronized Skin acquire(Skin skin) throws IOException {
+        skin.open();
+        skin.references++;
+        return skin;
+    }
+
+    /**
+     * Release a reference to a skin: the skin class loader is closed once no longer used.
+     *
+     * @param skin the skin to release
+     */
+    synchronized void release(Skin skin) {
+        if (skin.references > 0) {
+            skin.references--;
+            if (skin.references == 0) {
+                skin.close();
+            }
+        }
+    }
+
+    /**
+     * Evict every skin that is not used by any site rendering context.
+     */
+    synchronized void evictUnused() {
+        for (Iterator<Skin> it = skins.values().iterator(); it.hasNext(); ) {
+            if (it.next().references == 0) {
+                it.remove();
+            }
+        }
+    }
+
+    private static Skin load(File file, String checksum, String skinId) throws IOException, RendererException {
+        try (ZipFile zipFile = openZipFile(file)) {
+            if (zipFile.getEntry(DefaultSiteRenderer.SKIN_TEMPLATE_LOCATION) == null) {
+                throw new RendererException(
+                        "Skin does not contain template at " + DefaultSiteRenderer.SKIN_TEMPLATE_LOCATION);
+            }
+
+            SkinModel skinModel = null;
+            ZipEntry skinDescriptorEntry = zipFile.getEntry(SkinModel.SKIN_DESCRIPTOR_LOCATION);
+            if (skinDescriptorEntry != null) {
+                try (InputStream in = zipFile.getInputStream(skinDescriptorEntry)) {
+                    skinModel = new SkinXpp3Reader().read(in);
+                } catch (XmlPullParserException e) {
+                    throw new RendererException(
+                            "Failed to parse " + SkinModel.SKIN_DESCRIPTOR_LOCATION + " skin descriptor from "
+                                    + skinId + " skin",
+                            e);
+                }
+            }
+
+            return new Skin(file, checksum, skinModel);
+        }
+    }
+
+    private static ZipFile openZipFile(File file) throws IOException {
+        try {
+            return new ZipFile(file);
+        } catch (ZipException ex) {
+            throw new IOException("Error opening ZipFile: " + file.getAbsolutePath(), ex);
+        }
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.doxia.siterenderer;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Time spent in Doxia parsing, site template merge and each Velocity directive or macro of the site template,
+ * accumulated over all documents rendered with the same {@link SiteRenderingContext} when
+ * {@link SiteRenderingContext#isProfileTemplate()} is set.
+ *
+ * @since 2.2.0
+ * @see SiteRenderingContext#getTemplateProfile()
+ */
+public class TemplateProfile {
+    /** name of the entry measuring the Doxia parsing of the documents, including Velocity processing */
+    public static final String DOXIA_PARSING = "[Doxia parsing]";
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    /**
+     * Measures of a profiled directive, macro or rendering step.
+     */
+    public static class Entry {
+        private final String name;
+
+        private final LongAdder calls = new LongAdder();
+
+        private final LongAdder totalNanos = new LongAdder();
+
+        private final LongAdder selfNanos = new LongAdder();
+
+        Entry(String name) {
+            this.name = name;
+        }
+
+        /**
+         * Get the name of the measured directive or macro, like <code>#foreach</code> or <code>#menuItem</code>, or of
+         * the measured rendering step, between brackets.
+         *
+         * @return the name
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return the number of calls
+         */
+        public long getCalls() {
+            return calls.sum();
+        }
+
+        /**
+         * Get the time spent in the calls, including the time spent in nested profiled calls: time spent in recursive
+         * calls is counted once for each level of recursion.
+         *
+         * @return the total time in nanoseconds
+         */
+        public long getTotalNanos() {
+            return totalNanos.sum();
+        }
+
+        /**
+         * Get the time spent in the calls, excluding the time spent in nested profiled calls.
+         *
+         * @return the self time in nanoseconds
+         */
+        public long getSelfNanos() {
+            return selfNanos.sum();
+        }
+
+        void record(long total, long self) {
+            calls.increment();
+            totalNanos.add(total);
+            selfNanos.add(self);
+        }
+    }
+
+    /**
+     * Get the profiled entries, the most time consuming first.
+     *
+     * @return the entries sorted by decreasing self time
+     */
+    public List<Entry> getEntries() {
+        List<Entry> sorted = new ArrayList<>(entries.values());
+        sorted.sort(Comparator.comparingLong(Entry::getSelfNanos).reversed());
+        return sorted;
+    }
+
+    void record(String name, long total, long self) {
+        entries.computeIfAbsent(name, Entry::new).record(total, self);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder report = new StringBuilder();
+        report.append(String.format(
+                Locale.ROOT, "%-40s %10s %12s %12s%n", "directive or macro", "calls", "total ms", "self ms"));
+        for (Entry entry : getEntries()) {
+            report.append(String.format(
+                    Locale.ROOT,
+                    "%-40s %10d %12d %12d%n",
+                    entry.getName(),
+                    entry.getCalls(),
+                    TimeUnit.NANOSECONDS.toMillis(entry.getTotalNanos()),
+                    TimeUnit.NANOSECONDS.toMillis(entry.getSelfNanos())));
+        }
+        return report.toString();
+    }
+}
@@ -0,0 +1,290 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.doxia.siterenderer;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+import org.apache.velocity.Template;
+import org.apache.velocity.context.InternalContextAdapter;
+import org.apache.velocity.exception.TemplateInitException;
+import org.apache.velocity.runtime.parser.Parser;
+import org.apache.velocity.runtime.parser.Token;
+import org.apache.velocity.runtime.parser.node.ASTDirective;
+import org.apache.velocity.runtime.parser.node.Node;
+import org.apache.velocity.runtime.parser.node.StandardParserVisitor;
+
+/**
+ * Measures the time spent in rendering steps and in the directives and macros of an instrumented Velocity template.
+ * Nested measures are tracked per thread to compute the self time of each measure.
+ *
+ * @since 2.2.0
+ */
+final class TemplateProfiler {
+    private static final ThreadLocal<Deque<long[]>> MEASURES = new ThreadLocal<>();
+
+    private TemplateProfiler() {
+        // utility class
+    }
+
+    /**
+     * Start a measure, to be ended by {@link #exit(TemplateProfile, String)} in the same thread.
+     */
+    static void enter() {
+        Deque<long[]> measures = MEASURES.get();
+        if (measures == null) {
+            measures = new ArrayDeque<>();
+            MEASURES.set(measures);
+        }
+        // start time and time spent in nested measures
+        measures.push(new long[] {System.nanoTime(), 0});
+    }
+
+    /**
+     * End the last measure started by the current thread and record it.
+     *
+     * @param profile the profile recording the measure
+     * @param name the name of the measure
+     */
+    static void exit(TemplateProfile profile, String name) {
+        Deque<long[]> measures = MEASURES.get();
+        long[] measure = measures.pop();
+        long total = System.nanoTime() - measure[0];
+        if (measures.isEmpty()) {
+            MEASURES.remove();
+        } else {
+            measures.peek()[1] += total;
+        }
+        profile.record(name, total, total - measure[1]);
+    }
+
+    /**
+     * Instrument every directive and macro call of a compiled template, including the ones in the bodies of the
+     * macros it defines. Templates included with <code>#parse</code> are not instrumented: they are measured as a
+     * whole by the <code>#parse</code> directive.
+     *
+     * @param template the compiled template, not shared with templates that must not be profiled
+     * @param profile the profile recording the measures
+     */
+    static void instrument(Template template, TemplateProfile profile) {
+        instrument((Node) template.getData(), profile);
+    }
+
+    /**
+     * Get the node instrumented by a profiling node.
+     *
+     * @param node a node of a template, instrumented or not
+     * @return the instrumented node if the node is a profiling node, otherwise the node itself
+     */
+    static Node unwrap(Node node) {
+        return (node instanceof ProfiledNode) ? ((ProfiledNode) node).node : node;
+    }
+
+    private static void instrument(Node node, TemplateProfile profile) {
+        for (int i = 0; i < node.jjtGetNumChildren(); i++) {
+            Node child = node.jjtGetChild(i);
+            if (child instanceof ProfiledNode) {
+                continue;
+            }
+
+            instrument(child, profile);
+
+            if (child instanceof ASTDirective) {
+                String directiveName = ((ASTDirective) child).getDirectiveName();
+                // a macro definition renders nothing
+                if (!"macro".equals(directiveName)) {
+                    ProfiledNode profiled = new ProfiledNode(child, "#" + directiveName, profile);
+                    profiled.jjtSetParent(node);
+                    node.jjtAddChild(profiled, i);
+                }
+            }
+        }
+    }
+
+    /**
+     * Node measuring the rendering of the wrapped node, and delegating everything else to it.
+     */
+    private static final class ProfiledNode implements Node {
+        private final Node node;
+
+        private final String name;
+
+        private final TemplateProfile profile;
+
+        private Node parent;
+
+        ProfiledNode(Node node, String name, TemplateProfile profile) {
+            this.node = node;
+            this.name = name;
+            this.profile = profile;
+        }
+
+        @Override
+        public boolean render(InternalContextAdapter context, Writer writer) throws IOException {
+            enter();
+            try {
+                return node.render(context, writer);
+            } finally {
+                exit(profile, name);
+            }
+        }
+
+        @Override
+        public void jjtOpen() {
+            node.jjtOpen();
+        }
+
+        @Override
+        public void jjtClose() {
+            node.jjtClose();
+        }
+
+        @Override
+        public void jjtSetParent(Node n) {
+            this.parent = n;
+        }
+
+        @Override
+        public Node jjtGetParent() {
+            return parent;
+        }
+
+        @Override
+        public void jjtAddChild(Node n, int i) {
+            node.jjtAddChild(n, i);
+        }
+
+        @Override
+        public Node jjtGetChild(int i) {
+            return node.jjtGetChild(i);
+        }
+
+        @Override
+        public int jjtGetNumChildren() {
+            return node.jjtGetNumChildren();
+        }
+
+        @Override
+        public Object jjtAccept(StandardParserVisitor visitor, Object data) {
+            return node.jjtAccept(visitor, data);
+        }
+
+        @Override
+        public Object childrenAccept(StandardParserVisitor visitor, Object data) {
+            return node.childrenAccept(visitor, data);
+        }
+
+        @Override
+        public Token getFirstToken() {
+            return node.getFirstToken();
+        }
+
+        @Override
+        public Token getLastToken() {
+            return node.getLastToken();
+        }
+
+        @Override
+        public int getType() {
+            return node.getType();
+        }
+
+        @Override
+        public Object init(InternalContextAdapter context, Object data) throws TemplateInitException {
+            return node.init(context, data);
+        }
+
+        @Override
+        public boolean evaluate(InternalContextAdapter context) {
+            return node.evaluate(context);
+        }
+
+        @Override
+        public Object value(InternalContextAdapter context) {
+            return node.value(context);
+        }
+
+        @Override
+        public Object execute(Object o, InternalContextAdapter context) {
+            return node.execute(o, context);
+        }
+
+        @Override
+        public void setInfo(int info) {
+            node.setInfo(info);
+        }
+
+        @Override
+        public int getInfo() {
+            return node.getInfo();
+        }
+
+        @Override
+        public String literal() {
+            return node.literal();
+        }
+
+        @Override
+        public void setInvalid() {
+            node.setInvalid();
+        }
+
+        @Override
+        public boolean isInvalid() {
+            return node.isInvalid();
+        }
+
+        @Override
+        public int getLine() {
+            return node.getLine();
+        }
+
+        @Override
+        public int getColumn() {
+            return node.getColumn();
+        }
+
+        @Override
+        public String getTemplateName() {
+            return node.getTemplateName();
+        }
+
+        @Override
+        public String getFirstTokenImage() {
+            return node.getFirstTokenImage();
+        }
+
+        @Override
+        public String getLastTokenImage() {
+            return node.getLastTokenImage();
+        }
+
+        @Override
+        public Template getTemplate() {
+            return node.getTemplate();
+        }
+
+        @Override
+        public Parser getParser() {
+            return node.getParser();
+        }
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.doxia.siterenderer;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.velocity.Template;
+import org.apache.velocity.runtime.RuntimeServices;
+import org.apache.velocity.runtime.parser.node.ASTDirective;
+import org.apache.velocity.runtime.parser.node.ASTReference;
+import org.apache.velocity.runtime.parser.node.ASTStringLiteral;
+import org.apache.velocity.runtime.parser.node.Node;
+import org.apache.velocity.runtime.parser.node.SimpleNode;
+
+/**
+ * Context keys a compiled Velocity template may read, found by static analysis of its syntax tree: the root references
+ * of the template, of the macros it defines and of its interpolated string literals. The analysis gives up when the
+ * template may read keys not visible in its syntax tree: templates included with <code>#parse</code>, VTL evaluated
+ * with <code>#evaluate</code>, macros defined elsewhere, or the <code>$context</code> tool.
+ *
+ * @since 2.2.0
+ */
+final class TemplateReferences {
+    private static final Pattern INTERPOLATED_REFERENCE = Pattern.compile("\\$!?\\{?([a-zA-Z][a-zA-Z0-9_-]*)");
+
+    /** references of any template whose analysis gave up */
+    static final TemplateReferences UNKNOWN = new TemplateReferences(null);
+
+    /** root references, or <code>null</code> if the template may read any key */
+    private final Set<String> roots;
+
+    private TemplateReferences(Set<String> roots) {
+        this.roots = roots;
+    }
+
+    /**
+     * Analyze a compiled template.
+     *
+     * @param template the compiled template
+     * @return the template references
+     */
+    static TemplateReferences of(Template template) {
+        Node data = (Node) template.getData();
+        Set<String> macros = new HashSet<>();
+        collectMacros(data, macros);
+        Set<String> roots = new HashSet<>();
+        if (!collect(data, macros, roots) || roots.contains("context")) {
+            return UNKNOWN;
+        }
+        return new TemplateReferences(roots);
+    }
+
+    /**
+     * Whether the template may read any of some context keys.
+     *
+     * @param keys the context keys
+     * @return <code>true</code> if any of the keys is referenced, or if the template may read any key
+     */
+    boolean isAnyReferenced(Collection<String> keys) {
+        return roots == null || keys.stream().anyMatch(roots::contains);
+    }
+
+    private static void collectMacros(Node node, Set<String> macros) {
+        node = TemplateProfiler.unwrap(node);
+        if (node instanceof ASTDirective
+                && "macro".equals(((ASTDirective) node).getDirectiveName())
+                && node.jjtGetNumChildren() > 0) {
+            macros.add(node.jjtGetChild(0).getFirstTokenImage());
+        }
+        for (int i = 0; i < node.jjtGetNumChildren(); i++) {
+            collectMacros(node.jjtGetChild(i), macros);
+        }
+    }
+
+    private static boolean collect(Node node, Set<String> macros, Set<String> roots) {
+        node = TemplateProfiler.unwrap(node);
+        if (node instanceof ASTReference) {
+            roots.add(((ASTReference) node).getRootString());
+        } else if (node instanceof ASTStringLiteral) {
+            Matcher matcher = INTERPOLATED_REFERENCE.matcher(node.literal());
+            while (matcher.find()) {
+                roots.add(matcher.group(1));
+            }
+        } else if (node instanceof ASTDirective) {
+            String name = ((ASTDirective) node).getDirectiveName();
+            if ("parse".equals(name) || "evaluate".equals(name)) {
+                return false;
+            }
+            RuntimeServices runtimeServices = ((SimpleNode) node).getRuntimeServices();
+            if (!macros.contains(name)
+                    && (runtimeServices == null || runtimeServices.getDirective(name) == null)) {
+                // macro defined in a library
+                return false;
+            }
+        }
+        for (int i = 0; i < node.jjtGetNumChildren(); i++) {
+            if (!collect(node.jjtGetChild(i), macros, roots)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
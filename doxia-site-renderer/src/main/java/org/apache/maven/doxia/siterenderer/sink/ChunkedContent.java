@@ -0,0 +1,269 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.doxia.siterenderer.sink;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.velocity.context.InternalContextAdapter;
+import org.apache.velocity.runtime.Renderable;
+
+/**
+ * Text content stored in fixed size chunks while written by a sink, instead of a single growing buffer copied on each
+ * expansion. Exposed to the site template, it is written chunk by chunk to the template output by Velocity
+ * (see {@link Renderable}), without being materialized as a {@code String}.
+ * <p>
+ * For compatibility with site templates using <code>String</code> methods on the content, like
+ * <code>$bodyContent.replace(...)</code>, most common ones are provided, working on the {@link #toString()} value.
+ *
+ * @since 2.2.0
+ */
+public final class ChunkedContent implements CharSequence, Renderable {
+    private static final int CHUNK_SIZE = 8192;
+
+    /** full chunks */
+    private final List<char[]> chunks = new ArrayList<>();
+
+    private char[] current = new char[CHUNK_SIZE];
+
+    /** number of characters in the current chunk */
+    private int count;
+
+    private String string;
+
+    private final Writer writer = new Writer() {
+        @Override
+        public void write(int c) {
+            ChunkedContent.this.append((char) c);
+        }
+
+        @Override
+        public void write(char[] cbuf, int off, int len) {
+            ChunkedContent.this.append(cbuf, off, len);
+        }
+
+        @Override
+        public void write(String str, int off, int len) {
+            ChunkedContent.this.append(str, off, len);
+        }
+
+        @Override
+        public void flush() {
+            // nop
+        }
+
+        @Override
+        public void close() {
+            // nop
+        }
+    };
+
+    /**
+     * @return the writer to append content
+     */
+    Writer getWriter() {
+        return writer;
+    }
+
+    void append(String str) {
+        append(str, 0, str.length());
+    }
+
+    /**
+     * Shorten the content.
+     *
+     * @param newLength the new length, not greater than current length
+     */
+    void setLength(int newLength) {
+        while (chunks.size() * CHUNK_SIZE > newLength) {
+            current = chunks.remove(chunks.size() - 1);
+        }
+        count = newLength - chunks.size() * CHUNK_SIZE;
+        string = null;
+    }
+
+    private void append(char c) {
+        if (count == CHUNK_SIZE) {
+            nextChunk();
+        }
+        current[count++] = c;
+        string = null;
+    }
+
+    private void append(char[] cbuf, int off, int len) {
+        while (len > 0) {
+            if (count == CHUNK_SIZE) {
+                nextChunk();
+            }
+            int n = Math.min(len, CHUNK_SIZE - count);
+            System.arraycopy(cbuf, off, current, count, n);
+            count += n;
+            off += n;
+            len -= n;
+        }
+        string = null;
+    }
+
+    private void append(String str, int off, int len) {
+        while (len > 0) {
+            if (count == CHUNK_SIZE) {
+                nextChunk();
+            }
+            int n = Math.min(len, CHUNK_SIZE - count);
+            str.getChars(off, off + n, current, count);
+            count += n;
+            off += n;
+            len -= n;
+        }
+        string = null;
+    }
+
+    private void nextChunk() {
+        chunks.add(current);
+        current = new char[CHUNK_SIZE];
+        count = 0;
+    }
+
+    /**
+     * Write the content.
+     *
+     * @param out the writer to write the content to
+     * @throws IOException if the content can't be written
+     */
+    public void writeTo(Writer out) throws IOException {
+        for (char[] chunk : chunks) {
+            out.write(chunk);
+        }
+        out.write(current, 0, count);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean render(InternalContextAdapter context, Writer out) throws IOException {
+        writeTo(out);
+        return true;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int length() {
+        return chunks.size() * CHUNK_SIZE + count;
+    }
+
+    /**
+     * @return {@code true} if the content is empty
+     */
+    public boolean isEmpty() {
+        return length() == 0;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= length()) {
+            throw new IndexOutOfBoundsException("index " + index + ", length " + length());
+        }
+        int chunk = index / CHUNK_SIZE;
+        return (chunk == chunks.size()) ? current[index % CHUNK_SIZE] : chunks.get(chunk)[index % CHUNK_SIZE];
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return toString().subSequence(start, end);
+    }
+
+    /**
+     * Materialize the content as a {@code String}, which is kept until the content changes.
+     *
+     * @return the content
+     */
+    @Override
+    public String toString() {
+        if (string == null) {
+            StringBuilder sb = new StringBuilder(length());
+            for (char[] chunk : chunks) {
+                sb.append(chunk);
+            }
+            sb.append(current, 0, count);
+            string = sb.toString();
+        }
+        return string;
+    }
+
+    // String methods for site templates
+
+    public boolean contains(CharSequence s) {
+        return toString().contains(s);
+    }
+
+    public int indexOf(String str) {
+        return toString().indexOf(str);
+    }
+
+    public int indexOf(String str, int fromIndex) {
+        return toString().indexOf(str, fromIndex);
+    }
+
+    public int lastIndexOf(String str) {
+        return toString().lastIndexOf(str);
+    }
+
+    public boolean startsWith(String prefix) {
+        return toString().startsWith(prefix);
+    }
+
+    public boolean endsWith(String suffix) {
+        return toString().endsWith(suffix);
+    }
+
+    public boolean matches(String regex) {
+        return toString().matches(regex);
+    }
+
+    public String substring(int beginIndex) {
+        return toString().substring(beginIndex);
+    }
+
+    public String substring(int beginIndex, int endIndex) {
+        return toString().substring(beginIndex, endIndex);
+    }
+
+    public String replace(CharSequence target, CharSequence replacement) {
+        return toString().replace(target, replacement);
+    }
+
+    public String replaceAll(String regex, String replacement) {
+        return toString().replaceAll(regex, replacement);
+    }
+
+    public String replaceFirst(String regex, String replacement) {
+        return toString().replaceFirst(regex, replacement);
+    }
+
+    public String[] split(String regex) {
+        return toString().split(regex);
+    }
+
+    public String trim() {
+        return toString().trim();
+    }
+}
@@ -18,8 +18,6 @@
  */
 package org.apache.maven.doxia.siterenderer.sink;
 
-import java.io.StringWriter;
-import java.io.Writer;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -42,18 +40,22 @@ import org.apache.maven.doxia.siterenderer.DocumentRenderingContext;
  */
 @SuppressWarnings("checkstyle:methodname")
 public class SiteRendererSink extends Xhtml5Sink implements DocumentContent {
+    private static final String RELATIVE_PATH_TOKEN = "$relativePath";
+
+    private static final boolean LF_EOL = "\n".equals(EOL);
+
     private String date;
 
     private String title;
 
     private List<String> authors = new ArrayList<>();
 
-    private final StringWriter headWriter;
+    private final ChunkedContent head = new ChunkedContent();
 
     /** Buffer inside verbatim elements to potentially remove enclosed code elements for Mermaid diagrams */
     private StringBuilder verbatimBuffer;
 
-    private final Writer writer;
+    private final ChunkedContent body;
 
     private final MermaidConfiguration mermaidConfig;
 
@@ -62,6 +64,16 @@ public class SiteRendererSink extends Xhtml5Sink implements DocumentContent {
     private boolean containsMermaidDiagram = false;
 
     private boolean insideMermaidCodeElement = false;
+
+    /** Length of the beginning of a <code>$relativePath</code> token ending the content written last, if any */
+    private int partialTokenLength;
+
+    /** Where the partial token was written: the body or the verbatim buffer */
+    private CharSequence partialTokenTarget;
+
+    /** Length of the target content right after writing the partial token */
+    private int partialTokenEnd;
+
     /**
      * Construct a new SiteRendererSink for a document.
      *
@@ -72,15 +84,14 @@ public class SiteRendererSink extends Xhtml5Sink implements DocumentContent {
     }
 
     public SiteRendererSink(DocumentRenderingContext docRenderingContext, MermaidConfiguration mermaid) {
-        this(new StringWriter(), docRenderingContext, mermaid);
+        this(new ChunkedContent(), docRenderingContext, mermaid);
     }
 
     private SiteRendererSink(
-            StringWriter writer, DocumentRenderingContext docRenderingContext, MermaidConfiguration mermaid) {
-        super(writer);
+            ChunkedContent body, DocumentRenderingContext docRenderingContext, MermaidConfiguration mermaid) {
+        super(body.getWriter());
 
-        this.writer = writer;
-        this.headWriter = new StringWriter();
+        this.body = body;
         this.docRenderingContext = docRenderingContext;
         this.mermaidConfig = mermaid;
 
@@ -294,34 +305,136 @@ public class SiteRendererSink extends Xhtml5Sink implements DocumentContent {
         setHeadFlag(true);
     }
 
-    /** {@inheritDoc} */
+    /**
+     * {@inheritDoc}
+     *
+     * Replaces <code>$relativePath</code> tokens in one pass, text without token being written as is, even when
+     * a token is split over consecutive writes.
+     */
     @Override
     protected void write(String text) {
-        String txt = text;
-
         if (isHeadFlag()) {
-            headWriter.write(unifyEOLs(txt));
+            head.append(unifyEOLsIfNeeded(text));
 
             return;
         }
 
-        if (docRenderingContext != null) {
-            String relativePathToBasedir = docRenderingContext.getRelativePath();
+        if (docRenderingContext == null || text == null || text.isEmpty()) {
+            writeContent(text);
+            return;
+        }
 
-            if (relativePathToBasedir == null) {
-                txt = txt == null || txt.isEmpty() ? txt : txt.replace("$relativePath", ".");
-            } else {
-                txt = txt == null || txt.isEmpty() || relativePathToBasedir == null
-                        ? txt
-                        : txt.replace("$relativePath", relativePathToBasedir);
+        String relativePathToBasedir = docRenderingContext.getRelativePath();
+        String replacement = (relativePathToBasedir == null) ? "." : relativePathToBasedir;
+
+        int start = 0;
+        if (partialTokenLength > 0) {
+            start = completePartialToken(text, replacement);
+            if (start < 0) {
+                // still a partial token
+                return;
             }
         }
 
+        int length = text.length();
+        for (int i = text.indexOf('$', start); i >= 0; i = text.indexOf('$', i + 1)) {
+            if (text.startsWith(RELATIVE_PATH_TOKEN, i)) {
+                writeContent(text, start, i);
+                writeContent(replacement);
+                start = i + RELATIVE_PATH_TOKEN.length();
+                i = start - 1;
+            } else if (length - i < RELATIVE_PATH_TOKEN.length()
+                    && text.regionMatches(i, RELATIVE_PATH_TOKEN, 0, length - i)) {
+                // text ending with the beginning of a token, which may be completed by next write
+                writePartialToken(text, start, length - i);
+                return;
+            }
+        }
+        writeContent(text, start, length);
+    }
+
+    /**
+     * Complete a token whose beginning ended the previous write, replacing the beginning already written when
+     * nothing was written since.
+     *
+     * @return the index in text following the token, or <code>-1</code> if text continues the token without
+     * completing it
+     */
+    private int completePartialToken(String text, String replacement) {
+        int matched = partialTokenLength;
+        partialTokenLength = 0;
+
+        CharSequence target = getContentTarget();
+        if (target != partialTokenTarget || target.length() != partialTokenEnd) {
+            // written elsewhere, or other content written since
+            return 0;
+        }
+
+        int remaining = RELATIVE_PATH_TOKEN.length() - matched;
+        if (text.length() < remaining) {
+            if (text.regionMatches(0, RELATIVE_PATH_TOKEN, matched, text.length())) {
+                writePartialToken(text, 0, matched + text.length());
+                return -1;
+            }
+            return 0;
+        }
+        if (!text.regionMatches(0, RELATIVE_PATH_TOKEN, matched, remaining)) {
+            return 0;
+        }
+
+        int tokenStart = partialTokenEnd - matched;
+        if (target == body) {
+            body.setLength(tokenStart);
+        } else {
+            verbatimBuffer.setLength(tokenStart);
+        }
+        writeContent(replacement);
+        return remaining;
+    }
+
+    /**
+     * Write text ending with the beginning of a token, and remember where this beginning was written.
+     */
+    private void writePartialToken(String text, int start, int tokenLength) {
+        CharSequence target = getContentTarget();
+        int expectedEnd = target.length() + (text.length() - start);
+
+        writeContent(text, start, text.length());
+
+        // content written to a table buffer of the parent sink can't be checked
+        if (target == getContentTarget() && target.length() == expectedEnd) {
+            partialTokenLength = tokenLength;
+            partialTokenTarget = target;
+            partialTokenEnd = expectedEnd;
+        }
+    }
+
+    private CharSequence getContentTarget() {
+        return (verbatimBuffer != null) ? verbatimBuffer : body;
+    }
+
+    private void writeContent(String text, int start, int end) {
+        if (start < end) {
+            writeContent((start == 0 && end == text.length()) ? text : text.substring(start, end));
+        }
+    }
+
+    private void writeContent(String text) {
         if (verbatimBuffer != null) {
-            verbatimBuffer.append(unifyEOLs(txt));
+            verbatimBuffer.append(unifyEOLsIfNeeded(text));
             return;
         }
-        super.write(txt);
+        super.write(text);
+    }
+
+    /**
+     * Unify EOLs only if the text contains EOLs to change, to avoid a copy of the text.
+     */
+    private static String unifyEOLsIfNeeded(String text) {
+        if (text == null || (text.indexOf('\r') < 0 && (LF_EOL || text.indexOf('\n') < 0))) {
+            return text;
+        }
+        return unifyEOLs(text);
     }
 
     // DocumentContent interface
@@ -343,15 +456,33 @@ public class SiteRendererSink extends Xhtml5Sink implements DocumentContent {
 
     /** {@inheritDoc} */
     public String getBody() {
-        String body = writer.toString();
-
-        return body.length() > 0 ? body : null;
+        return body.length() > 0 ? body.toString() : null;
     }
 
     /** {@inheritDoc} */
     public String getHead() {
-        String head = headWriter.toString();
+        return head.length() > 0 ? head.toString() : null;
+    }
 
+    /**
+     * Get the html body of the document, to be written to the site template output without materializing it as
+     * a {@code String}.
+     *
+     * @return the document body, or {@code null} if empty
+     * @since 2.2.0
+     */
+    public ChunkedContent getBodyContent() {
+        return body.length() > 0 ? body : null;
+    }
+
+    /**
+     * Get the html head of the document, to be written to the site template output without materializing it as
+     * a {@code String}.
+     *
+     * @return the document head, or {@code null} if empty
+     * @since 2.2.0
+     */
+    public ChunkedContent getHeadContent() {
         return head.length() > 0 ? head : null;
     }
 
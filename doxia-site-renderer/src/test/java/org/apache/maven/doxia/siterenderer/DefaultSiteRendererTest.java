@@ -29,19 +29,26 @@ import java.io.Reader;
 import java.io.StringWriter;
 import java.io.UncheckedIOException;
 import java.net.URI;
+import java.net.URL;
+import java.net.URLClassLoader;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.FileSystem;
 import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.jar.JarOutputStream;
 import java.util.stream.Stream;
 import java.util.zip.ZipEntry;
@@ -58,6 +65,8 @@ import org.apache.maven.doxia.site.io.xpp3.SiteXpp3Reader;
 import org.apache.maven.doxia.siterenderer.SiteRenderingContext.SiteDirectory;
 import org.apache.maven.doxia.siterenderer.sink.SiteRendererSink;
 import org.apache.maven.doxia.xsd.AbstractXmlValidator;
+import org.apache.velocity.Template;
+import org.apache.velocity.context.Context;
 import org.codehaus.plexus.PlexusContainer;
 import org.codehaus.plexus.testing.PlexusTest;
 import org.codehaus.plexus.util.FileUtils;
@@ -77,13 +86,18 @@ import static org.codehaus.plexus.testing.PlexusExtension.getTestFile;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.ArgumentMatchers.isNull;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -273,6 +287,377 @@ public class DefaultSiteRendererTest {
         validatePages();
     }
 
+    @Test
+    void renderConcurrently() throws Exception {
+        SiteModel siteModel =
+                new SiteXpp3Reader().read(new FileInputStream(getTestFile("src/test/resources/site/site.xml")));
+
+        File sequentialOutput = getTestFile("target/output-sequential");
+        org.apache.commons.io.FileUtils.deleteDirectory(sequentialOutput);
+        SiteRenderingContext ctxt =
+                getSiteRenderingContext(siteModel, minimalSkinJar, "src/test/resources/site", false);
+        ctxt.setRootDirectory(getTestFile(""));
+        siteRenderer.render(siteRenderer.locateDocumentFiles(ctxt).values(), ctxt, sequentialOutput);
+
+        File parallelOutput = getTestFile("target/output-parallel");
+        org.apache.commons.io.FileUtils.deleteDirectory(parallelOutput);
+        ctxt = getSiteRenderingContext(siteModel, minimalSkinJar, "src/test/resources/site", false);
+        ctxt.setRootDirectory(getTestFile(""));
+        ctxt.setParallelism(4);
+        siteRenderer.render(siteRenderer.locateDocumentFiles(ctxt).values(), ctxt, parallelOutput);
+
+        List<String> files = FileUtils.getFileNames(sequentialOutput, "**/*.html", null, false);
+        assertFalse(files.isEmpty());
+        assertEquals(files.size(), FileUtils.getFileNames(parallelOutput, "**/*.html", null, false).size());
+        for (String file : files) {
+            assertTrue(
+                    org.apache.commons.io.FileUtils.contentEquals(
+                            new File(sequentialOutput, file), new File(parallelOutput, file)),
+                    file + " differs from sequential rendering");
+        }
+    }
+
+    @Test
+    void renderConcurrentlyReportsAllFailures() throws Exception {
+        File basedir = getTestFile("src/test/resources/site/xdoc");
+        List<DocumentRenderer> documents = new ArrayList<>();
+        documents.add(new DoxiaDocumentRenderer(new DocumentRenderingContext(
+                basedir, "src/test/resources/site/xdoc", "head.xml", "unknown", "xml", false)));
+        documents.add(new DoxiaDocumentRenderer(new DocumentRenderingContext(
+                basedir, "src/test/resources/site/xdoc", "macro.xml", "unknown", "xml", false)));
+
+        SiteRenderingContext context = new SiteRenderingContext();
+        context.setSiteModel(new SiteModel());
+        context.setParallelism(2);
+
+        File outputDirectory = getTestFile("target/output-failures");
+        org.apache.commons.io.FileUtils.deleteDirectory(outputDirectory);
+        RendererException e =
+                assertThrows(RendererException.class, () -> siteRenderer.render(documents, context, outputDirectory));
+        assertTrue(e.getMessage().startsWith("2 documents failed to render:"), e.getMessage());
+        assertTrue(e.getMessage().contains("head.html"), e.getMessage());
+        assertTrue(e.getMessage().contains("macro.html"), e.getMessage());
+        assertEquals(1, e.getSuppressed().length);
+    }
+
+    @Test
+    void renderWithManifest() throws Exception {
+        File outputDirectory = getTestFile("target/output-manifest");
+        org.apache.commons.io.FileUtils.deleteDirectory(outputDirectory);
+        File manifestDirectory = getTestFile("target/render-manifests");
+
+        SiteModel siteModel = new SiteModel();
+        DocumentRenderingContext docRenderingContext = new DocumentRenderingContext(
+                getTestFile("src/test/resources/site/apt"),
+                "src/test/resources/site/apt",
+                "cdc.apt",
+                "apt",
+                "apt",
+                false);
+        List<DocumentRenderer> documents = Collections.singletonList(new DoxiaDocumentRenderer(docRenderingContext));
+
+        SiteRenderingContext context =
+                getSiteRenderingContext(siteModel, minimalSkinJar, "src/test/resources/site", false);
+        context.setRenderManifestDirectory(manifestDirectory);
+        siteRenderer.render(documents, context, outputDirectory);
+
+        File output = new File(outputDirectory, "cdc.html");
+        assertTrue(output.exists());
+        assertTrue(RenderManifest.getFile(manifestDirectory, outputDirectory).exists());
+        // the manifest is not deployed with the site
+        assertEquals(Collections.singletonList("cdc.html"), Arrays.asList(outputDirectory.list()));
+
+        // same inputs with a more recent modification date: not rendered again
+        FileUtils.fileWrite(output, "UTF-8", "unchanged");
+        output.setLastModified(0L);
+        siteModel.setLastModified(System.currentTimeMillis());
+        siteRenderer.render(documents, context, outputDirectory);
+        assertEquals("unchanged", FileUtils.fileRead(output, "UTF-8"));
+
+        // changed site model: rendered again
+        siteModel.setName("changed");
+        context = getSiteRenderingContext(siteModel, minimalSkinJar, "src/test/resources/site", false);
+        context.setRenderManifestDirectory(manifestDirectory);
+        siteRenderer.render(documents, context, outputDirectory);
+        assertFalse("unchanged".equals(FileUtils.fileRead(output, "UTF-8")));
+    }
+
+    @Test
+    void renderCompareBeforeWrite() throws Exception {
+        File outputDirectory = getTestFile("target/output-compare");
+        org.apache.commons.io.FileUtils.deleteDirectory(outputDirectory);
+
+        DocumentRenderingContext docRenderingContext = new DocumentRenderingContext(
+                getTestFile("src/test/resources/site/apt"),
+                "src/test/resources/site/apt",
+                "cdc.apt",
+                "apt",
+                "apt",
+                false);
+        DocumentRenderer docRenderer = spy(new DoxiaDocumentRenderer(docRenderingContext));
+        when(docRenderer.isOverwrite()).thenReturn(true);
+        List<DocumentRenderer> documents = Collections.singletonList(docRenderer);
+
+        SiteRenderingContext context =
+                getSiteRenderingContext(new SiteModel(), minimalSkinJar, "src/test/resources/site", false);
+        context.setCompareBeforeWrite(true);
+        siteRenderer.render(documents, context, outputDirectory);
+        assertEquals(1, context.getRenderStatistics().getWrittenFiles());
+        assertEquals(0, context.getRenderStatistics().getUnchangedFiles());
+
+        File output = new File(outputDirectory, "cdc.html");
+        output.setLastModified(0L);
+        siteRenderer.render(documents, context, outputDirectory);
+        assertEquals(1, context.getRenderStatistics().getWrittenFiles());
+        assertEquals(1, context.getRenderStatistics().getUnchangedFiles());
+        assertEquals(0L, output.lastModified());
+        assertEquals(Collections.singletonList("cdc.html"), Arrays.asList(outputDirectory.list()));
+
+        FileUtils.fileWrite(output, "UTF-8", "outdated");
+        siteRenderer.render(documents, context, outputDirectory);
+        assertEquals(2, context.getRenderStatistics().getWrittenFiles());
+        assertFalse("outdated".equals(FileUtils.fileRead(output, "UTF-8")));
+    }
+
+    @Test
+    void parseDocumentWithCache() throws Exception {
+        DefaultSiteRenderer renderer = (DefaultSiteRenderer) siteRenderer;
+        DocumentRenderingContext docRenderingContext = new DocumentRenderingContext(
+                getTestFile("src/test/resources/site/apt"),
+                "src/test/resources/site/apt",
+                "cdc.apt",
+                "apt",
+                "apt",
+                false);
+        MemoryDocumentContentCache cache = spy(new MemoryDocumentContentCache());
+
+        SiteRenderingContext context =
+                getSiteRenderingContext(new SiteModel(), minimalSkinJar, "src/test/resources/site", false);
+        context.setDocumentContentCache(cache);
+        DocumentContent parsed = renderer.parseDocument(docRenderingContext, context);
+        assertNotNull(parsed.getBody());
+
+        // other site model and skin template: parsing result reused
+        context = getSiteRenderingContext(new SiteModel(), minimalSkinJar, "src/test/resources/site", false);
+        context.setDocumentContentCache(cache);
+        DocumentContent cached = renderer.parseDocument(docRenderingContext, context);
+        assertEquals(parsed.getBody(), cached.getBody());
+        assertEquals(parsed.getTitle(), cached.getTitle());
+        assertEquals(docRenderingContext, cached.getRenderingContext());
+        verify(cache, times(1)).put(any(), any());
+
+        StringWriter writer = new StringWriter();
+        siteRenderer.mergeDocumentIntoSite(writer, cached, context);
+        assertTrue(writer.toString().contains(parsed.getBody()));
+
+        // Velocity processed documents are not cached
+        DocumentRenderingContext velocityRenderingContext = new DocumentRenderingContext(
+                getTestFile("src/test/resources/site/apt"),
+                "src/test/resources/site/apt",
+                "cdc.apt",
+                "apt",
+                "apt",
+                false);
+        velocityRenderingContext.setAttribute("velocity", "true");
+        renderer.parseDocument(velocityRenderingContext, context);
+        verify(cache, times(1)).put(any(), any());
+    }
+
+    @Test
+    void parseVelocityDocumentStreamed() throws Exception {
+        DefaultSiteRenderer renderer = (DefaultSiteRenderer) siteRenderer;
+        Path basedir = Files.createDirectories(getTestFile("target/site-velocity").toPath());
+        Files.write(
+                basedir.resolve("page.apt.vm"),
+                Arrays.asList(
+                        " -----", " Title", " -----", "", "#foreach( $i in [1..5000] )", "  Paragraph $i", "", "#end"),
+                StandardCharsets.UTF_8);
+        Files.write(basedir.resolve("broken.apt.vm"), Arrays.asList("#foreach("), StandardCharsets.UTF_8);
+        File processedContentOutput = basedir.resolve("processed").toFile();
+
+        SiteRenderingContext context =
+                getSiteRenderingContext(new SiteModel(), minimalSkinJar, "src/test/resources/site", false);
+        context.setProcessedContentOutput(processedContentOutput);
+
+        DocumentRenderingContext docRenderingContext = new DocumentRenderingContext(
+                basedir.toFile(), "target/site-velocity", "page.apt.vm", "apt", "apt", false);
+        docRenderingContext.setAttribute("velocity", "true");
+        DocumentContent parsed = renderer.parseDocument(docRenderingContext, context);
+        assertTrue(parsed.getBody().contains("Paragraph 1</p>"));
+        assertTrue(parsed.getBody().contains("Paragraph 5000</p>"));
+
+        // Velocity processing result saved while parsed
+        String processed = new String(
+                Files.readAllBytes(new File(processedContentOutput, "page.apt").toPath()), StandardCharsets.UTF_8);
+        assertTrue(processed.contains("  Paragraph 5000"));
+
+        DocumentRenderingContext brokenRenderingContext = new DocumentRenderingContext(
+                basedir.toFile(), "target/site-velocity", "broken.apt.vm", "apt", "apt", false);
+        brokenRenderingContext.setAttribute("velocity", "true");
+        RendererException e = assertThrows(
+                RendererException.class, () -> renderer.parseDocument(brokenRenderingContext, context));
+        assertTrue(e.getMessage().endsWith("as a Velocity template"));
+    }
+
+    @Test
+    void parseDocumentWithFileCache() throws Exception {
+        DefaultSiteRenderer renderer = (DefaultSiteRenderer) siteRenderer;
+        File cacheDirectory = getTestFile("target/content-cache");
+        org.apache.commons.io.FileUtils.deleteDirectory(cacheDirectory);
+        DocumentRenderingContext docRenderingContext = new DocumentRenderingContext(
+                getTestFile("src/test/resources/site/apt"),
+                "src/test/resources/site/apt",
+                "cdc.apt",
+                "apt",
+                "apt",
+                false);
+
+        SiteRenderingContext context =
+                getSiteRenderingContext(new SiteModel(), minimalSkinJar, "src/test/resources/site", false);
+        context.setDocumentContentCache(new FileDocumentContentCache(cacheDirectory));
+        DocumentContent parsed = renderer.parseDocument(docRenderingContext, context);
+
+        // next build
+        FileDocumentContentCache cache = spy(new FileDocumentContentCache(cacheDirectory));
+        context.setDocumentContentCache(cache);
+        DocumentContent cached = renderer.parseDocument(docRenderingContext, context);
+        assertEquals(parsed.getTitle(), cached.getTitle());
+        assertEquals(parsed.getDate(), cached.getDate());
+        assertEquals(parsed.getAuthors(), cached.getAuthors());
+        assertEquals(parsed.getHead(), cached.getHead());
+        assertEquals(parsed.getBody(), cached.getBody());
+        verify(cache, times(0)).put(any(), any());
+
+        // parser configured with options which are not all known: parsed again, not cached
+        context.setParserConfigurator((parserId, filePath, parser) -> {
+            parser.setEmitComments(true);
+            return true;
+        });
+        renderer.parseDocument(docRenderingContext, context);
+        verify(cache, times(1)).get(any());
+        verify(cache, times(0)).put(any(), any());
+    }
+
+    @Test
+    void renderLocales() throws Exception {
+        File siteDirectory = getTestFile("target/site-locales");
+        File outputDirectory = getTestFile("target/output-locales");
+        org.apache.commons.io.FileUtils.deleteDirectory(siteDirectory);
+        org.apache.commons.io.FileUtils.deleteDirectory(outputDirectory);
+        File aptDirectory = new File(siteDirectory, "apt");
+        File frAptDirectory = new File(siteDirectory, "fr/apt");
+        aptDirectory.mkdirs();
+        frAptDirectory.mkdirs();
+        FileUtils.fileWrite(new File(aptDirectory, "index.apt"), "UTF-8", " -----\n Index\n -----\n\nWelcome\n");
+        FileUtils.fileWrite(new File(aptDirectory, "other.apt"), "UTF-8", " -----\n Other\n -----\n\nOther\n");
+        FileUtils.fileWrite(new File(frAptDirectory, "index.apt"), "UTF-8", " -----\n Index\n -----\n\nBienvenue\n");
+
+        DocumentContentCache cache = spy(new MemoryDocumentContentCache());
+        SiteRenderingContext context =
+                getSiteRenderingContext(new SiteModel(), minimalSkinJar, "target/site-locales", false);
+        context.setRootDirectory(getTestFile(""));
+        context.setDocumentContentCache(cache);
+        SiteRenderingContext frContext =
+                getSiteRenderingContext(new SiteModel(), minimalSkinJar, "target/site-locales/fr", false);
+        frContext.addSiteDirectory(new SiteDirectory(siteDirectory, true, true));
+        frContext.setRootDirectory(getTestFile(""));
+        frContext.setDocumentContentCache(cache);
+
+        Map<SiteRenderingContext, File> outputDirectories = new LinkedHashMap<>();
+        outputDirectories.put(context, outputDirectory);
+        outputDirectories.put(frContext, new File(outputDirectory, "fr"));
+        siteRenderer.renderLocales(outputDirectories);
+
+        assertTrue(FileUtils.fileRead(new File(outputDirectory, "index.html"), "UTF-8").contains("Welcome"));
+        assertTrue(FileUtils.fileRead(new File(outputDirectory, "fr/index.html"), "UTF-8").contains("Bienvenue"));
+        assertTrue(FileUtils.fileRead(new File(outputDirectory, "fr/other.html"), "UTF-8").contains("Other"));
+        // other.apt parsed once for both locales
+        verify(cache, times(3)).put(any(), any());
+        assertEquals(cache, frContext.getDocumentContentCache());
+    }
+
+    @Test
+    void mergeLargeDocumentIntoSite() throws Exception {
+        DocumentRenderingContext docRenderingContext =
+                new DocumentRenderingContext(new File("."), "document.html", "generator");
+        SiteRendererSink sink = new SiteRendererSink(docRenderingContext);
+        sink.head();
+        sink.title();
+        sink.text("Large");
+        sink.title_();
+        sink.head_();
+        sink.body();
+        for (int i = 0; i < 5000; i++) {
+            sink.paragraph();
+            sink.text("paragraph " + i);
+            sink.paragraph_();
+        }
+        sink.body_();
+        sink.flush();
+
+        assertTrue(sink.getBodyContent().length() > 3 * 8192);
+        assertEquals(sink.getBody(), sink.getBodyContent().toString());
+        assertTrue(sink.getBodyContent().contains("paragraph 4999"));
+
+        SiteRenderingContext context =
+                getSiteRenderingContext(new SiteModel(), minimalSkinJar, "src/test/resources/site", false);
+        StringWriter writer = new StringWriter();
+        siteRenderer.mergeDocumentIntoSite(writer, sink, context);
+        assertEquals(
+                "<main id=\"contentBox\">" + sink.getBody().replace("\n", System.lineSeparator()) + "</main>",
+                writer.toString().trim());
+    }
+
+    @Test
+    void renderIncrementally() throws Exception {
+        File siteDirectory = getTestFile("target/site-watch");
+        File outputDirectory = getTestFile("target/output-watch");
+        org.apache.commons.io.FileUtils.deleteDirectory(siteDirectory);
+        org.apache.commons.io.FileUtils.deleteDirectory(outputDirectory);
+        File aptDirectory = new File(siteDirectory, "apt");
+        aptDirectory.mkdirs();
+        FileUtils.fileWrite(new File(aptDirectory, "first.apt"), "UTF-8", " -----\n First\n -----\n\nFirst text\n");
+        FileUtils.fileWrite(new File(aptDirectory, "second.apt"), "UTF-8", " -----\n Second\n -----\n\nSecond\n");
+
+        SiteRenderingContext context =
+                getSiteRenderingContext(new SiteModel(), minimalSkinJar, "target/site-watch", false);
+        context.setRootDirectory(getTestFile(""));
+        try (IncrementalSiteRenderer renderer = new IncrementalSiteRenderer(siteRenderer, context, outputDirectory)) {
+            renderer.render();
+            assertTrue(context.isOpened());
+            assertTrue(new File(outputDirectory, "first.html").exists());
+            assertTrue(new File(outputDirectory, "second.html").exists());
+
+            assertTrue(renderer.renderChanges(100, TimeUnit.MILLISECONDS).isEmpty());
+
+            FileUtils.fileWrite(
+                    new File(aptDirectory, "first.apt"), "UTF-8", " -----\n First\n -----\n\nChanged text\n");
+            Collection<DocumentRenderer> rendered = renderChanges(renderer);
+            assertEquals(1, rendered.size());
+            assertEquals("first.html", rendered.iterator().next().getOutputName());
+            assertTrue(rendered.iterator().next() instanceof DoxiaDocumentRenderer);
+            assertTrue(rendered.iterator().next().isOverwrite());
+            assertTrue(FileUtils.fileRead(new File(outputDirectory, "first.html"), "UTF-8").contains("Changed text"));
+
+            Files.delete(new File(aptDirectory, "second.apt").toPath());
+            FileUtils.fileWrite(new File(aptDirectory, "third.apt"), "UTF-8", " -----\n Third\n -----\n\nThird\n");
+            rendered = renderChanges(renderer);
+            assertEquals(1, rendered.size());
+            assertTrue(new File(outputDirectory, "third.html").exists());
+            assertFalse(new File(outputDirectory, "second.html").exists());
+        }
+        assertFalse(context.isOpened());
+    }
+
+    private static Collection<DocumentRenderer> renderChanges(IncrementalSiteRenderer renderer) throws Exception {
+        // some file systems report changes lazily
+        Collection<DocumentRenderer> rendered = Collections.emptyList();
+        for (int i = 0; i < 30 && rendered.isEmpty(); i++) {
+            rendered = renderer.renderChanges(1, TimeUnit.SECONDS);
+        }
+        return rendered;
+    }
+
     void renderDocument(
             SiteRenderingContext context, String baseDir, String document, String extension, String parserId)
             throws Exception {
@@ -346,6 +731,135 @@ public class DefaultSiteRendererTest {
         assertEquals(expectedResult, renderResult);
     }
 
+    @Test
+    void profileTemplate() throws Exception {
+        SiteRenderingContext siteRenderingContext = new SiteRenderingContext();
+        siteRenderingContext.setSiteModel(new SiteModel());
+        siteRenderingContext.setTemplateName("org/apache/maven/doxia/siterenderer/profiled-template.vm");
+        siteRenderingContext.setProfileTemplate(true);
+        DocumentRenderingContext docRenderingContext =
+                new DocumentRenderingContext(new File("."), "document.html", "generator");
+
+        StringWriter writer = new StringWriter();
+        siteRenderer.mergeDocumentIntoSite(writer, new SiteRendererSink(docRenderingContext), siteRenderingContext);
+        assertEquals(3, writer.toString().split("<li>2<ul><li>1<ul></ul></li></ul></li>", -1).length - 1);
+        siteRenderer.mergeDocumentIntoSite(
+                new StringWriter(), new SiteRendererSink(docRenderingContext), siteRenderingContext);
+
+        Map<String, TemplateProfile.Entry> entries = new HashMap<>();
+        for (TemplateProfile.Entry entry : siteRenderingContext.getTemplateProfile().getEntries()) {
+            entries.put(entry.getName(), entry);
+        }
+        assertEquals(2, entries.get("[org/apache/maven/doxia/siterenderer/profiled-template.vm]").getCalls());
+        assertEquals(2, entries.get("#foreach").getCalls());
+        // recursive macro calls are measured too
+        TemplateProfile.Entry item = entries.get("#item");
+        assertEquals(18, item.getCalls());
+        assertTrue(item.getTotalNanos() >= item.getSelfNanos());
+        assertTrue(siteRenderingContext.getTemplateProfile().toString().contains("#item"));
+    }
+
+    @Test
+    void velocityToolManagerReused() throws Exception {
+        SiteRenderingContext siteRenderingContext = new SiteRenderingContext();
+        siteRenderingContext.setSiteModel(new SiteModel());
+        DefaultSiteRenderer renderer = (DefaultSiteRenderer) siteRenderer;
+
+        Context context = renderer.createToolManagedVelocityContext(siteRenderingContext);
+        Context other = renderer.createToolManagedVelocityContext(siteRenderingContext);
+        // application scoped tools are shared, request scoped ones are not
+        assertSame(context.get("math"), other.get("math"));
+        assertNotSame(context.get("context"), other.get("context"));
+
+        siteRenderingContext.setLocale(Locale.FRENCH);
+        assertNotSame(context.get("math"), renderer.createToolManagedVelocityContext(siteRenderingContext).get("math"));
+
+        // tools are configured from the skin class loader, not from the context class loader of the calling thread
+        int toolManagers = siteRenderingContext.getToolManagers().size();
+        Thread thread = Thread.currentThread();
+        ClassLoader old = thread.getContextClassLoader();
+        thread.setContextClassLoader(new URLClassLoader(new URL[0], old));
+        try {
+            renderer.createToolManagedVelocityContext(siteRenderingContext);
+        } finally {
+            thread.setContextClassLoader(old);
+        }
+        assertEquals(toolManagers, siteRenderingContext.getToolManagers().size());
+    }
+
+    @Test
+    void skinSharedByContexts() throws Exception {
+        Artifact skin = new DefaultArtifact(
+                "org.group", "artifact", VersionRange.createFromVersion("1.1"), null, "jar", "", null);
+        skin.setFile(minimalSkinJar);
+        DocumentRenderingContext docRenderingContext =
+                new DocumentRenderingContext(new File("."), "document.html", "generator");
+
+        SiteRenderingContext context =
+                siteRenderer.createContextForSkin(skin, new HashMap<>(), new SiteModel(), "defaultitle", Locale.ROOT);
+        SiteRenderingContext other = siteRenderer.createContextForSkin(
+                skin, new HashMap<>(), new SiteModel(), "defaultitle", Locale.FRENCH);
+        ClassLoader classLoader = context.getTemplateClassLoader();
+        assertSame(classLoader, other.getTemplateClassLoader());
+        siteRenderer.mergeDocumentIntoSite(new StringWriter(), new SiteRendererSink(docRenderingContext), context);
+        Template template = context.getSiteTemplate();
+
+        // the skin is released at the end of the rendering, and acquired again when the context is used again
+        siteRenderer.render(Collections.emptyList(), context, new File(getBasedir(), "target/output/skin-shared"));
+        assertNull(context.getTemplateClassLoader());
+        siteRenderer.mergeDocumentIntoSite(new StringWriter(), new SiteRendererSink(docRenderingContext), context);
+        assertSame(classLoader, context.getTemplateClassLoader());
+
+        // a context opened for several renderings keeps its skin until released
+        siteRenderer.openContext(context);
+        siteRenderer.render(Collections.emptyList(), context, new File(getBasedir(), "target/output/skin-shared"));
+        siteRenderer.render(Collections.emptyList(), context, new File(getBasedir(), "target/output/skin-shared"));
+        assertSame(classLoader, context.getTemplateClassLoader());
+
+        // an unused skin class loader is closed, its compiled template is kept for the next contexts until evicted
+        siteRenderer.releaseContext(context);
+        siteRenderer.releaseContext(other);
+        context = siteRenderer.createContextForSkin(skin, new HashMap<>(), new SiteModel(), "defaultitle", Locale.ROOT);
+        assertNotSame(classLoader, context.getTemplateClassLoader());
+        siteRenderer.mergeDocumentIntoSite(new StringWriter(), new SiteRendererSink(docRenderingContext), context);
+        assertSame(template, context.getSiteTemplate());
+
+        siteRenderer.releaseContext(context);
+        siteRenderer.evictUnusedSkins();
+        other = siteRenderer.createContextForSkin(skin, new HashMap<>(), new SiteModel(), "defaultitle", Locale.ROOT);
+        siteRenderer.mergeDocumentIntoSite(new StringWriter(), new SiteRendererSink(docRenderingContext), other);
+        assertNotSame(template, other.getSiteTemplate());
+        siteRenderer.releaseContext(other);
+    }
+
+    @Test
+    void documentVelocityContextLayered() throws Exception {
+        SiteRenderingContext siteRenderingContext = new SiteRenderingContext();
+        siteRenderingContext.setSiteModel(new SiteModel());
+        siteRenderingContext.setTemplateProperties(Collections.singletonMap("relativePath", "overridden"));
+        DefaultSiteRenderer renderer = (DefaultSiteRenderer) siteRenderer;
+        DocumentRenderingContext docRenderingContext =
+                new DocumentRenderingContext(new File(""), "sub/document.html", "generator");
+
+        Context context = renderer.createDocumentVelocityContext(docRenderingContext, siteRenderingContext);
+        Context other = renderer.createDocumentVelocityContext(docRenderingContext, siteRenderingContext);
+        assertSame(context.get("PathTool"), other.get("PathTool"));
+        // site level values still take precedence over document ones
+        assertEquals("overridden", context.get("relativePath"));
+        assertEquals(docRenderingContext.getOutputName(), context.get("currentFilePath"));
+        assertNotNull(context.get("math"));
+
+        // values put by a template only live in the document overlay
+        context.put("site", "changed");
+        assertEquals("changed", context.get("site"));
+        assertSame(siteRenderingContext.getSiteModel(), other.get("site"));
+
+        siteRenderingContext.setSiteModel(new SiteModel());
+        assertSame(
+                siteRenderingContext.getSiteModel(),
+                renderer.createDocumentVelocityContext(docRenderingContext, siteRenderingContext).get("site"));
+    }
+
     @Test
     void velocityToolManagerForSkin() throws Exception {
         StringWriter writer = new StringWriter();
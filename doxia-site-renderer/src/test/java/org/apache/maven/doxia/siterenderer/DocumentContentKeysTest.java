@@ -0,0 +1,55 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.doxia.siterenderer;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DocumentContentKeysTest {
+
+    @Test
+    void macroDetected() {
+        assertTrue(DocumentContentKeys.containsMacro(bytes("text %{snippet|file=Foo.java} text")));
+        assertTrue(DocumentContentKeys.containsMacro(bytes("<p><macro name=\"toc\"/></p>")));
+        assertTrue(DocumentContentKeys.containsMacro(bytes("<!-- MACRO{toc} -->")));
+        assertFalse(DocumentContentKeys.containsMacro(bytes("# Title\n\nNo macro here.")));
+    }
+
+    @Test
+    void onlyAsciiCompatibleEncodingsScanned() {
+        byte[] source = bytes("# Title");
+        assertTrue(DocumentContentKeys.isAsciiCompatible("UTF-8", source));
+        assertTrue(DocumentContentKeys.isAsciiCompatible("ISO-8859-1", source));
+        assertFalse(DocumentContentKeys.isAsciiCompatible("UTF-16", source));
+        assertFalse(DocumentContentKeys.isAsciiCompatible("UTF-32LE", source));
+        assertFalse(DocumentContentKeys.isAsciiCompatible("no-such-encoding", source));
+
+        // byte order marks of UTF-16 content, whatever the input encoding
+        assertFalse(DocumentContentKeys.isAsciiCompatible("UTF-8", "﻿<macro".getBytes(StandardCharsets.UTF_16BE)));
+        assertFalse(DocumentContentKeys.isAsciiCompatible("UTF-8", "﻿<macro".getBytes(StandardCharsets.UTF_16LE)));
+    }
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.doxia.siterenderer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.velocity.Template;
+import org.junit.jupiter.api.Test;
+
+import static org.codehaus.plexus.testing.PlexusExtension.getTestFile;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class DocumentTemplateCacheTest {
+
+    @Test
+    void templateCompiledOncePerContent() throws Exception {
+        File source = getTestFile("target/document-template-cache/page.apt.vm");
+        source.getParentFile().mkdirs();
+        Files.write(source.toPath(), "$title".getBytes(StandardCharsets.UTF_8));
+
+        DocumentTemplateCache cache = new DocumentTemplateCache();
+        SiteRenderingContext siteContext = new SiteRenderingContext();
+        AtomicInteger compilations = new AtomicInteger();
+        Template template = cache.getTemplate(source, "UTF-8", siteContext, () -> compile(compilations));
+        assertSame(template, cache.getTemplate(source, "UTF-8", siteContext, () -> compile(compilations)));
+        assertEquals(1, compilations.get());
+
+        // same content with another timestamp
+        source.setLastModified(source.lastModified() - 10000);
+        assertSame(template, cache.getTemplate(source, "UTF-8", siteContext, () -> compile(compilations)));
+        assertEquals(1, compilations.get());
+
+        // other encoding
+        assertNotSame(template, cache.getTemplate(source, "ISO-8859-1", siteContext, () -> compile(compilations)));
+        assertEquals(2, compilations.get());
+
+        Files.write(source.toPath(), "$shortTitle".getBytes(StandardCharsets.UTF_8));
+        source.setLastModified(source.lastModified() + 20000);
+        assertNotSame(template, cache.getTemplate(source, "UTF-8", siteContext, () -> compile(compilations)));
+        assertEquals(3, compilations.get());
+    }
+
+    @Test
+    void templatesDroppedWithTheirSiteContexts() throws Exception {
+        File source = getTestFile("target/document-template-cache/shared.apt.vm");
+        source.getParentFile().mkdirs();
+        Files.write(source.toPath(), "$title".getBytes(StandardCharsets.UTF_8));
+
+        DocumentTemplateCache cache = new DocumentTemplateCache();
+        SiteRenderingContext en = new SiteRenderingContext();
+        SiteRenderingContext fr = new SiteRenderingContext();
+        AtomicInteger compilations = new AtomicInteger();
+        Template template = cache.getTemplate(source, "UTF-8", en, () -> compile(compilations));
+        assertSame(template, cache.getTemplate(source, "UTF-8", fr, () -> compile(compilations)));
+
+        cache.release(en);
+        assertEquals(1, cache.size());
+        assertSame(template, cache.getTemplate(source, "UTF-8", fr, () -> compile(compilations)));
+
+        cache.release(fr);
+        assertEquals(0, cache.size());
+        assertEquals(1, compilations.get());
+    }
+
+    @Test
+    void templatesDroppedWithUnreleasedSiteContexts() throws Exception {
+        File source = getTestFile("target/document-template-cache/forgotten.apt.vm");
+        File other = getTestFile("target/document-template-cache/other.apt.vm");
+        source.getParentFile().mkdirs();
+        Files.write(source.toPath(), "$title".getBytes(StandardCharsets.UTF_8));
+        Files.write(other.toPath(), "$shortTitle".getBytes(StandardCharsets.UTF_8));
+
+        DocumentTemplateCache cache = new DocumentTemplateCache();
+        AtomicInteger compilations = new AtomicInteger();
+        cache.getTemplate(source, "UTF-8", new SiteRenderingContext(), () -> compile(compilations));
+        assertEquals(1, cache.size());
+
+        // the site rendering context is garbage collected without being released: its template is dropped when
+        // other templates are compiled
+        SiteRenderingContext siteContext = new SiteRenderingContext();
+        int others = 0;
+        do {
+            System.gc();
+            cache.getTemplate(other, "encoding-" + others++, siteContext, () -> compile(compilations));
+        } while (cache.size() > others && others < 50);
+        assertEquals(others, cache.size());
+    }
+
+    @Test
+    void templateNotCachedWhenSourceChangedWhileCompiling() throws Exception {
+        File source = getTestFile("target/document-template-cache/edited.apt.vm");
+        source.getParentFile().mkdirs();
+        Files.write(source.toPath(), "$title".getBytes(StandardCharsets.UTF_8));
+
+        DocumentTemplateCache cache = new DocumentTemplateCache();
+        SiteRenderingContext siteContext = new SiteRenderingContext();
+        AtomicInteger compilations = new AtomicInteger();
+        cache.getTemplate(source, "UTF-8", siteContext, () -> {
+            try {
+                Files.write(source.toPath(), "$shortTitle".getBytes(StandardCharsets.UTF_8));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return compile(compilations);
+        });
+        assertEquals(0, cache.size());
+    }
+
+    private static Template compile(AtomicInteger compilations) {
+        compilations.incrementAndGet();
+        return new Template();
+    }
+}
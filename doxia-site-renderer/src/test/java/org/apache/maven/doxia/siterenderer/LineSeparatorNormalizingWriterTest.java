@@ -0,0 +1,84 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.doxia.siterenderer;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class LineSeparatorNormalizingWriterTest {
+
+    @Test
+    void normalizeLineSeparators() throws IOException {
+        assertEquals("a\r\nb\r\nc\rd\r\n", normalize("\r\n", "a\nb\r\nc\rd\n"));
+        assertEquals("a\nb\nc\rd\n", normalize("\n", "a\nb\r\nc\rd\r\n"));
+        assertEquals("end\r", normalize("\n", "end\r"));
+    }
+
+    @Test
+    void separatorSplitOverWrites() throws IOException {
+        StringWriter out = new StringWriter();
+        try (Writer writer = new LineSeparatorNormalizingWriter(out, "\n")) {
+            writer.write("a\r");
+            writer.write("\nb\r");
+            writer.write('c');
+            writer.write("\r".toCharArray());
+            writer.write('\n');
+            writer.write("\r\r\n");
+        }
+        assertEquals("a\nb\rc\n\r\n", out.toString());
+    }
+
+    @Test
+    void finishWithoutClosing() throws IOException {
+        StringWriter out = new StringWriter() {
+            @Override
+            public void close() {
+                throw new AssertionError("underlying writer closed");
+            }
+        };
+        LineSeparatorNormalizingWriter writer = new LineSeparatorNormalizingWriter(out, "\n");
+        writer.write("a\r\nb\r");
+        writer.finish();
+        assertEquals("a\nb\r", out.toString());
+    }
+
+    @Test
+    void largeContent() throws IOException {
+        StringBuilder text = new StringBuilder();
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 10000; i++) {
+            text.append("line ").append(i).append("\r\n");
+            expected.append("line ").append(i).append('\n');
+        }
+        assertEquals(expected.toString(), normalize("\n", text.toString()));
+    }
+
+    private static String normalize(String lineSeparator, String text) throws IOException {
+        StringWriter out = new StringWriter();
+        try (Writer writer = new LineSeparatorNormalizingWriter(out, lineSeparator)) {
+            writer.write(text);
+        }
+        return out.toString();
+    }
+}
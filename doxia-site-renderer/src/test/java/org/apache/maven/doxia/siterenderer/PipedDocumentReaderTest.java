@@ -0,0 +1,97 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.doxia.siterenderer;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.net.URL;
+import java.net.URLClassLoader;
+
+import org.codehaus.plexus.util.IOUtil;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class PipedDocumentReaderTest {
+
+    @Test
+    void streamLargeContent() throws IOException {
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 100000; i++) {
+            expected.append("line ").append(i).append('\n');
+        }
+
+        StringWriter copy = new StringWriter();
+        PipedDocumentReader reader = PipedDocumentReader.start("test", copy, writer -> {
+            for (int i = 0; i < 100000; i++) {
+                writer.write("line " + i);
+                writer.write('\n');
+            }
+        });
+        assertEquals(expected.toString(), IOUtil.toString(reader));
+        assertNull(reader.awaitProducer());
+        assertEquals(expected.toString(), copy.toString());
+    }
+
+    @Test
+    void producerUsesCallerClassLoader() throws IOException {
+        Thread thread = Thread.currentThread();
+        ClassLoader old = thread.getContextClassLoader();
+        ClassLoader classLoader = new URLClassLoader(new URL[0], old);
+        thread.setContextClassLoader(classLoader);
+        PipedDocumentReader reader;
+        try {
+            reader = PipedDocumentReader.start("test", null, writer -> {
+                Thread producerThread = Thread.currentThread();
+                writer.write(producerThread.getName() + ' ' + (producerThread.getContextClassLoader() == classLoader));
+            });
+        } finally {
+            thread.setContextClassLoader(old);
+        }
+        assertEquals("test true", IOUtil.toString(reader));
+        assertNull(reader.awaitProducer());
+    }
+
+    @Test
+    void producerFailure() throws IOException {
+        IllegalStateException failure = new IllegalStateException("failure");
+        PipedDocumentReader reader = PipedDocumentReader.start("test", null, writer -> {
+            writer.write("partial content");
+            throw failure;
+        });
+        IOException e = assertThrows(IOException.class, () -> IOUtil.toString(reader));
+        assertSame(failure, e.getCause());
+        assertSame(failure, reader.awaitProducer());
+    }
+
+    @Test
+    void closedBeforeEnd() throws IOException {
+        PipedDocumentReader reader = PipedDocumentReader.start("test", null, writer -> {
+            while (true) {
+                writer.write("endless content");
+            }
+        });
+        assertEquals(10, reader.read(new char[10]));
+        // stopping the producer because nobody reads any more is not a failure
+        assertNull(reader.awaitProducer());
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.doxia.siterenderer;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.maven.doxia.site.skin.ResourceCondition;
+import org.apache.maven.doxia.site.skin.SkinModel;
+import org.apache.velocity.VelocityContext;
+import org.apache.velocity.context.Context;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ResourceConditionsTest {
+
+    @Test
+    void conditionResultsMemoized() {
+        SkinModel skinModel = new SkinModel();
+        skinModel.addResourceCondition(condition("false", "js/never.js"));
+        skinModel.addResourceCondition(condition("$flag", "js/flag.js"));
+        skinModel.addResourceCondition(condition("#if($flag == 'true')true#end", "js/if.js"));
+        ResourceConditions conditions = ResourceConditions.create(skinModel);
+
+        AtomicInteger contexts = new AtomicInteger();
+        ResourceConditions.Evaluation evaluation = conditions.evaluate(() -> {
+            contexts.incrementAndGet();
+            return new VelocityContext();
+        });
+        assertTrue(evaluation.isResourceRelevant("js/unconditional.js"));
+        assertFalse(evaluation.isResourceRelevant("js/never.js"));
+        assertEquals(1, contexts.get());
+
+        // the result of a condition without reference is known without any context
+        evaluation = conditions.evaluate(() -> {
+            contexts.incrementAndGet();
+            return new VelocityContext();
+        });
+        assertFalse(evaluation.isResourceRelevant("js/never.js"));
+        assertEquals(1, contexts.get());
+
+        // results are memoized by referenced values
+        assertTrue(conditions.evaluate(() -> flag("true")).isResourceRelevant("js/flag.js"));
+        assertFalse(conditions.evaluate(() -> flag("false")).isResourceRelevant("js/flag.js"));
+        assertTrue(conditions.evaluate(() -> flag("true")).isResourceRelevant("js/flag.js"));
+        assertTrue(conditions.evaluate(() -> flag("true")).isResourceRelevant("js/if.js"));
+        assertFalse(conditions.evaluate(() -> flag("false")).isResourceRelevant("js/if.js"));
+
+        // values which are not plain data are evaluated every time
+        Object toggle = new Object() {
+            private boolean value;
+
+            @Override
+            public String toString() {
+                value = !value;
+                return String.valueOf(value);
+            }
+        };
+        Context context = new VelocityContext();
+        context.put("flag", toggle);
+        assertTrue(conditions.evaluate(() -> context).isResourceRelevant("js/flag.js"));
+        assertFalse(conditions.evaluate(() -> context).isResourceRelevant("js/flag.js"));
+    }
+
+    @Test
+    void conditionEvaluatedOncePerFingerprint() {
+        SkinModel skinModel = new SkinModel();
+        skinModel.addResourceCondition(condition("$flag", "js/flag.js"));
+        ResourceConditions conditions = ResourceConditions.create(skinModel);
+
+        // reads of the referenced value: once to fingerprint it, and more when the condition is evaluated
+        AtomicInteger reads = new AtomicInteger();
+        assertTrue(conditions.evaluate(() -> countingFlag("true", reads)).isResourceRelevant("js/flag.js"));
+        assertTrue(reads.get() > 1);
+
+        for (int i = 0; i < 3; i++) {
+            reads.set(0);
+            assertTrue(conditions.evaluate(() -> countingFlag("true", reads)).isResourceRelevant("js/flag.js"));
+            assertEquals(1, reads.get());
+        }
+
+        reads.set(0);
+        assertFalse(conditions.evaluate(() -> countingFlag("false", reads)).isResourceRelevant("js/flag.js"));
+        assertTrue(reads.get() > 1);
+    }
+
+    private static ResourceCondition condition(String vtl, String resourceName) {
+        ResourceCondition condition = new ResourceCondition();
+        condition.setVtlCondition(vtl);
+        condition.addResourceName(resourceName);
+        return condition;
+    }
+
+    private static Context flag(String value) {
+        Context context = new VelocityContext();
+        context.put("flag", value);
+        return context;
+    }
+
+    private static Context countingFlag(String value, AtomicInteger reads) {
+        Context context = new VelocityContext() {
+            @Override
+            public Object internalGet(String key) {
+                if ("flag".equals(key)) {
+                    reads.incrementAndGet();
+                }
+                return super.internalGet(key);
+            }
+        };
+        context.put("flag", value);
+        return context;
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.doxia.siterenderer;
+
+import java.io.StringReader;
+import java.util.Collections;
+
+import org.apache.velocity.Template;
+import org.apache.velocity.runtime.RuntimeInstance;
+import org.apache.velocity.runtime.parser.ParseException;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TemplateReferencesTest {
+
+    @Test
+    void referencedKeys() throws Exception {
+        TemplateReferences references = TemplateReferences.of(template(
+                "$title #foreach( $item in $items )$item.name#end\n"
+                        + "#macro( link $href )<a href=\"${href}\">$linkText</a>#end\n"
+                        + "#link( \"$relativePath/index.html\" )"));
+        assertTrue(isReferenced(references, "title"));
+        assertTrue(isReferenced(references, "items"));
+        assertTrue(isReferenced(references, "linkText"));
+        assertTrue(isReferenced(references, "relativePath"));
+        assertFalse(isReferenced(references, "scmModifiedDate"));
+    }
+
+    @Test
+    void unknownReferences() throws Exception {
+        assertTrue(isReferenced(TemplateReferences.of(template("#parse( 'other.vm' )")), "scmModifiedDate"));
+        assertTrue(isReferenced(TemplateReferences.of(template("#evaluate( $vtl )")), "scmModifiedDate"));
+        assertTrue(isReferenced(TemplateReferences.of(template("$context.get( $key )")), "scmModifiedDate"));
+        assertTrue(isReferenced(TemplateReferences.of(template("#libraryMacro()")), "scmModifiedDate"));
+    }
+
+    private static boolean isReferenced(TemplateReferences references, String key) {
+        return references.isAnyReferenced(Collections.singleton(key));
+    }
+
+    private static Template template(String vtl) throws ParseException {
+        RuntimeInstance runtimeInstance = new RuntimeInstance();
+        runtimeInstance.init();
+        Template template = new Template();
+        template.setRuntimeServices(runtimeInstance);
+        template.setName("template.vm");
+        template.setData(runtimeInstance.parse(new StringReader(vtl), template));
+        template.initDocument();
+        return template;
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.doxia.siterenderer.sink;
+
+import java.io.File;
+
+import org.apache.maven.doxia.siterenderer.DocumentRenderingContext;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class SiteRendererSinkTest {
+
+    private static SiteRendererSink newSink() {
+        return new SiteRendererSink(new DocumentRenderingContext(new File("."), "sub/document.html", "generator"));
+    }
+
+    private static String body(SiteRendererSink sink) {
+        sink.flush();
+        return sink.getBody();
+    }
+
+    @Test
+    void relativePath() {
+        SiteRendererSink sink = newSink();
+        sink.rawText("<a href=\"$relativePath/index.html\">$relativePath$</a>");
+        assertEquals("<a href=\"../index.html\">..$</a>", body(sink));
+    }
+
+    @Test
+    void noRelativePath() {
+        SiteRendererSink sink = new SiteRendererSink(new DocumentRenderingContext(new File("."), "doc.html", "gen"));
+        sink.rawText("$relativePath/index.html");
+        assertEquals("./index.html", body(sink));
+    }
+
+    @Test
+    void relativePathSplitOverWrites() {
+        SiteRendererSink sink = newSink();
+        sink.rawText("a $rel");
+        sink.rawText("ative");
+        sink.rawText("Path/b $relativePath");
+        sink.rawText(" $");
+        sink.rawText("relativePath");
+        assertEquals("a ../b .. ..", body(sink));
+    }
+
+    @Test
+    void partialRelativePath() {
+        SiteRendererSink sink = newSink();
+        sink.rawText("$rel");
+        sink.rawText("ax $relative");
+        sink.rawText("$relativePath");
+        sink.rawText("$");
+        assertEquals("$relax $relative..$", body(sink));
+    }
+
+    @Test
+    void relativePathInVerbatim() {
+        SiteRendererSink sink = newSink();
+        sink.verbatim(null);
+        sink.text("$relative");
+        sink.text("Path");
+        sink.verbatim_();
+        assertEquals("<pre>..</pre>", body(sink).trim());
+    }
+}
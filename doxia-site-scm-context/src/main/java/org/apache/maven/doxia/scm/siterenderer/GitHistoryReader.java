@@ -0,0 +1,194 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.doxia.scm.siterenderer;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.ZoneOffset;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.maven.scm.command.info.InfoItem;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevSort;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
+import org.eclipse.jgit.treewalk.EmptyTreeIterator;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.AndTreeFilter;
+import org.eclipse.jgit.treewalk.filter.PathFilter;
+import org.eclipse.jgit.treewalk.filter.PathFilterGroup;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
+
+/**
+ * Reads the last change of files directly from the objects of their local Git repository with JGit, in process and
+ * offline, instead of running the git executable. The history is walked once for all the files, from the most recent
+ * commit, until the last change of every file is found.
+ * <p>
+ * Like the SCM change log, merge commits are skipped: the last change of a file is the last commit that modified it
+ * compared to its parent.
+ * <p>
+ * JGit is an optional dependency: this class must only be used when JGit is on the class path.
+ *
+ * @since 2.2.0
+ */
+final class GitHistoryReader {
+    private GitHistoryReader() {
+        // utility class
+    }
+
+    /**
+     * Retrieves the SCM info of files from the Git repository of a directory.
+     *
+     * @param directory the directory, in the work tree of a Git repository
+     * @param files the files, in the same work tree
+     * @return the SCM info by file, without the files never committed
+     * @throws IOException if no Git repository is found or if it cannot be read
+     */
+    static Map<File, InfoItem> getScmInfos(File directory, Collection<File> files) throws IOException {
+        return getScmInfos(directory, null, files);
+    }
+
+    /**
+     * Retrieves the SCM info of the files changed since a revision, from the Git repository of a directory.
+     *
+     * @param directory the directory, in the work tree of a Git repository
+     * @param startRevision the revision, which changes are excluded
+     * @param files the files, in the same work tree
+     * @return the SCM info by file, only for the files changed since the revision
+     * @throws IOException if no Git repository is found, if it cannot be read or if it does not contain the revision
+     */
+    static Map<File, InfoItem> getScmInfos(File directory, String startRevision, Collection<File> files)
+            throws IOException {
+        Map<File, InfoItem> scmInfos = new HashMap<>();
+        try (Repository repository = openRepository(directory);
+                RevWalk revWalk = new RevWalk(repository);
+                TreeWalk treeWalk = new TreeWalk(repository)) {
+            // files not yet matched to a commit, by path relative to the work tree
+            Map<String, File> remainingFiles = new HashMap<>();
+            Path workTree = repository.getWorkTree().toPath().toAbsolutePath().normalize();
+            for (File file : files) {
+                Path path = file.toPath().toAbsolutePath().normalize();
+                if (path.startsWith(workTree)) {
+                    remainingFiles.put(workTree.relativize(path).toString().replace('\\', '/'), file);
+                }
+            }
+
+            ObjectId head = repository.resolve(Constants.HEAD);
+            if (head == null || remainingFiles.isEmpty()) {
+                return scmInfos;
+            }
+            revWalk.sort(RevSort.COMMIT_TIME_DESC);
+            revWalk.markStart(revWalk.parseCommit(head));
+            if (startRevision != null) {
+                ObjectId start = repository.resolve(startRevision);
+                if (start == null) {
+                    throw new IOException("Unknown revision " + startRevision + " in Git repository " + directory);
+                }
+                revWalk.markUninteresting(revWalk.parseCommit(start));
+            }
+
+            treeWalk.setRecursive(true);
+            int filteredFiles = 0;
+            for (RevCommit commit : revWalk) {
+                if (commit.getParentCount() > 1) {
+                    continue;
+                }
+                if (filteredFiles != remainingFiles.size()) {
+                    // only diff the files which last change is still unknown
+                    filteredFiles = remainingFiles.size();
+                    treeWalk.setFilter(AndTreeFilter.create(
+                            PathFilterGroup.createFromStrings(remainingFiles.keySet()), TreeFilter.ANY_DIFF));
+                }
+
+                treeWalk.reset();
+                if (commit.getParentCount() == 1) {
+                    treeWalk.addTree(revWalk.parseCommit(commit.getParent(0)).getTree());
+                } else {
+                    treeWalk.addTree(new EmptyTreeIterator());
+                }
+                treeWalk.addTree(commit.getTree());
+                while (treeWalk.next()) {
+                    File file = remainingFiles.remove(treeWalk.getPathString());
+                    if (file != null) {
+                        scmInfos.put(file, toInfoItem(commit));
+                    }
+                }
+                if (remainingFiles.isEmpty()) {
+                    break;
+                }
+            }
+        }
+        return scmInfos;
+    }
+
+    /**
+     * Retrieves the last revision that changed a directory, from its Git repository.
+     *
+     * @param directory the directory, in the work tree of a Git repository
+     * @return the revision, or {@code null} if the directory was never committed
+     * @throws IOException if no Git repository is found or if it cannot be read
+     */
+    static String getLastRevision(File directory) throws IOException {
+        try (Repository repository = openRepository(directory);
+                RevWalk revWalk = new RevWalk(repository)) {
+            ObjectId head = repository.resolve(Constants.HEAD);
+            if (head == null) {
+                return null;
+            }
+            revWalk.sort(RevSort.COMMIT_TIME_DESC);
+            revWalk.markStart(revWalk.parseCommit(head));
+
+            Path workTree = repository.getWorkTree().toPath().toAbsolutePath().normalize();
+            Path path = directory.toPath().toAbsolutePath().normalize();
+            if (!path.equals(workTree)) {
+                revWalk.setTreeFilter(AndTreeFilter.create(
+                        PathFilter.create(workTree.relativize(path).toString().replace('\\', '/')),
+                        TreeFilter.ANY_DIFF));
+            }
+            RevCommit commit = revWalk.next();
+            return (commit != null) ? commit.name() : null;
+        }
+    }
+
+    private static Repository openRepository(File directory) throws IOException {
+        FileRepositoryBuilder builder = new FileRepositoryBuilder().findGitDir(directory.getAbsoluteFile());
+        if (builder.getGitDir() == null) {
+            throw new IOException("No Git repository found for directory " + directory);
+        }
+        return builder.setMustExist(true).build();
+    }
+
+    private static InfoItem toInfoItem(RevCommit commit) {
+        PersonIdent author = commit.getAuthorIdent();
+        InfoItem scmInfo = new InfoItem();
+        scmInfo.setRevision(commit.name());
+        scmInfo.setLastChangedRevision(commit.name());
+        // same format as the author of the SCM change log
+        scmInfo.setLastChangedAuthor(author.getName() + " <" + author.getEmailAddress() + ">");
+        scmInfo.setLastChangedDateTime(author.getWhen().toInstant().atOffset(ZoneOffset.UTC));
+        return scmInfo;
+    }
+}
@@ -23,15 +23,45 @@ import javax.inject.Named;
 import javax.inject.Singleton;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
 
 import org.apache.maven.doxia.siterenderer.ContextCustomizer;
 import org.apache.maven.doxia.siterenderer.DocumentRenderingContext;
 import org.apache.maven.doxia.siterenderer.SiteRenderingContext;
+import org.apache.maven.scm.ChangeFile;
+import org.apache.maven.scm.ChangeSet;
 import org.apache.maven.scm.ScmException;
 import org.apache.maven.scm.ScmFileSet;
+import org.apache.maven.scm.ScmRevision;
+import org.apache.maven.scm.command.changelog.ChangeLogScmRequest;
+import org.apache.maven.scm.command.changelog.ChangeLogScmResult;
 import org.apache.maven.scm.command.info.InfoItem;
 import org.apache.maven.scm.command.info.InfoScmResult;
 import org.apache.maven.scm.manager.ScmManager;
@@ -44,9 +74,38 @@ import org.slf4j.LoggerFactory;
  * A {@link ContextCustomizer} that adds SCM attributes to the Velocity context for use in templates.
  * It looks for an SCM repository in the directory of the site being rendered, and if found, retrieves SCM info for the file being rendered and adds it to the Velocity context.
  *
- * The SCM repository is lazily retrieved and cached in the SiteRenderingContext attributes for subsequent retrievals, so that it is only looked up once per site rendering.
+ * The SCM repository is looked up once per site rendering, before the site is rendered, and kept with the SCM info retrieved so far in a site state released after the site rendering.
+ * The SCM repository of each directory is remembered by this component for the whole build: sites of other modules and
+ * locales reuse the repositories already found, and only look up the directories not visited yet. A repository is
+ * only reused as long as the SCM metadata of its root directory did not change, to look up again a repository moved,
+ * cloned again or converted to another SCM, for example between the watch mode sessions of a long-lived build.
  *
  * The SCM info is retrieved for each document being rendered, but only if an SCM repository was found for the site.
+ * When the documents are prefetched, the SCM info of all documents is retrieved at once from the SCM change log of
+ * their common directory before rendering starts, or concurrently file by file if the change log is not available.
+ * When JGit is on the class path, the history of Git repositories is read in process instead of running the git
+ * executable.
+ * Nothing is retrieved if the templates never read the SCM attributes.
+ *
+ * The SCM info of prefetched documents can be persisted between site renderings in a cache file, set with the
+ * {@value #CACHE_FILE_ATTRIBUTE} attribute of the site rendering context. This cache is valid for the last revision of
+ * the SCM work tree: as long as this revision does not change, only the documents whose content changed are
+ * retrieved again. When it changes, only the documents touched by the new revisions are retrieved, from the change
+ * log since the cached revision. The documents not prefetched by a site rendering, like the documents not modified
+ * since the previous one, stay cached for the next site renderings. In Git work trees, the revision is not retrieved
+ * from SCM as long as the commit checked out, read from the files of the Git directory, does not change: an unchanged
+ * checkout runs no SCM command at all. With other SCMs, or Git reference storage formats other than loose and packed
+ * references, retrieving the revision still runs an SCM command (a change log limited to one change set) for every
+ * site rendering.
+ *
+ * SCM info is retrieved on a bounded pool of threads, and a document waits for its SCM info at most
+ * {@value #LOOKUP_TIMEOUT_ATTRIBUTE} milliseconds, within a total waiting time of {@value #TOTAL_TIMEOUT_ATTRIBUTE}
+ * milliseconds for the documents prefetched together, from the start of the site rendering or from the last prefetch
+ * (site rendering context attributes, by default 10 and 60 seconds). Past these deadlines, the file modification
+ * date is used instead, and a single warning is logged after the site rendering. Likewise, documents whose SCM info
+ * could not be retrieved are reported by a single warning after the site rendering, with the number of documents and
+ * the first failure, the failure of each document being logged at debug level. Documents generated from non-editable
+ * sources, like the ones in {@code target/generated-site}, are never in SCM and are skipped.
  *
  * The following attributes are added to the Velocity context:
  * <ul>
@@ -60,84 +119,634 @@ import org.slf4j.LoggerFactory;
 @Named("scmAttributes")
 public class ScmAttributesContextCustomizer implements ContextCustomizer {
 
+    /**
+     * Name of the site rendering context attribute holding the file where SCM info is cached between site renderings,
+     * as a {@link File} or a path.
+     *
+     * @since 2.2.0
+     */
+    public static final String CACHE_FILE_ATTRIBUTE = "scmAttributes.cacheFile";
+
+    /**
+     * Name of the site rendering context attribute holding the maximum time to wait for the SCM info of a document, in
+     * milliseconds, as a {@link Number} or a string.
+     *
+     * @since 2.2.0
+     */
+    public static final String LOOKUP_TIMEOUT_ATTRIBUTE = "scmAttributes.lookupTimeout";
+
+    /**
+     * Name of the site rendering context attribute holding the maximum time to wait for the SCM info of the documents
+     * of a site, from the start of the site rendering or from the last prefetch, in milliseconds, as a {@link Number}
+     * or a string.
+     *
+     * @since 2.2.0
+     */
+    public static final String TOTAL_TIMEOUT_ATTRIBUTE = "scmAttributes.totalTimeout";
+
+    private static final long DEFAULT_LOOKUP_TIMEOUT = 10000;
+
+    private static final long DEFAULT_TOTAL_TIMEOUT = 60000;
+
     private static final String ATTRIBUTE_NAME_SCM_MODIFIED_AUTHOR = "scmModifiedAuthor";
 
     private static final String ATTRIBUTE_NAME_SCM_MODIFIED_DATE = "scmModifiedDate";
 
-    private static final String KEY_SCM_REPOSITORY = "org.apache.maven.doxia.scm.siterenderer.scmRepository";
+    private static final Set<String> CONTEXT_KEYS = Collections.unmodifiableSet(
+            new HashSet<>(Arrays.asList(ATTRIBUTE_NAME_SCM_MODIFIED_AUTHOR, ATTRIBUTE_NAME_SCM_MODIFIED_DATE)));
 
     private static final Logger LOGGER = LoggerFactory.getLogger(ScmAttributesContextCustomizer.class);
 
+    /** whether JGit, an optional dependency, is available to read Git history in process */
+    private static final boolean JGIT_AVAILABLE = isClassAvailable("org.eclipse.jgit.lib.Repository");
+
     private final ScmManager scmManager;
 
+    /**
+     * SCM work tree of every directory already looked up and found in an SCM repository, in this directory or in a
+     * parent one: directories outside of any SCM repository are looked up again, as one may be created meanwhile
+     */
+    private final Map<Path, ScmWorkTree> scmWorkTrees = new ConcurrentHashMap<>();
+
     @Inject
     ScmAttributesContextCustomizer(ScmManager scmManager) {
         this.scmManager = scmManager;
     }
 
     /**
-     * Lazily retrieves the SCM repository for the site being rendered, caching it in the SiteRenderingContext attributes for subsequent retrievals.
+     * SCM repository and info of the documents of a site.
+     */
+    private static final class SiteState {
+        private final ScmWorkTree scmWorkTree;
+
+        private final ScmRepository scmRepository;
+
+        private final File cacheFile;
+
+        private final Map<File, CompletableFuture<InfoItem>> scmInfos = new ConcurrentHashMap<>();
+
+        private final long lookupTimeoutNanos;
+
+        private final long totalTimeoutNanos;
+
+        /**
+         * {@link System#nanoTime()} after which SCM info is no longer waited for, shared by all the documents of a
+         * rendering
+         */
+        private volatile long deadlineNanos;
+
+        /** documents which SCM info was not retrieved in time */
+        private final Queue<File> timedOutFiles = new ConcurrentLinkedQueue<>();
+
+        /** documents which SCM info could not be retrieved */
+        private final Queue<File> failedFiles = new ConcurrentLinkedQueue<>();
+
+        /** cause of the first SCM info retrieval failure */
+        private final AtomicReference<Throwable> firstFailure = new AtomicReference<>();
+
+        private ExecutorService executor;
+
+        private SiteState(ScmWorkTree scmWorkTree, File cacheFile, long lookupTimeout, long totalTimeout) {
+            this.scmWorkTree = scmWorkTree;
+            this.scmRepository = (scmWorkTree != null) ? scmWorkTree.getScmRepository() : null;
+            this.cacheFile = cacheFile;
+            this.lookupTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(lookupTimeout);
+            this.totalTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(totalTimeout);
+            restartDeadline();
+        }
+
+        /**
+         * Restarts the site deadline for a new rendering of the site, which may be one of several renderings of a site
+         * rendering context kept open.
+         */
+        private void restartDeadline() {
+            deadlineNanos = System.nanoTime() + totalTimeoutNanos;
+        }
+
+        /**
+         * Gets the executor of the SCM lookups, with one thread per processor at most: threads are only started when
+         * lookups are submitted.
+         * @return the executor
+         */
+        private synchronized ExecutorService getExecutor() {
+            if (executor == null) {
+                AtomicInteger threadCount = new AtomicInteger();
+                executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), runnable -> {
+                    Thread thread = new Thread(runnable, "doxia-scm-lookup-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            }
+            return executor;
+        }
+
+        /**
+         * Waits for the SCM info of a document, within the document and the site deadlines.
+         * @param scmInfo the SCM info being retrieved
+         * @param file the document file
+         * @return the SCM info, {@code null} if not available
+         * @throws TimeoutException if the SCM info was not retrieved in time
+         */
+        private InfoItem await(CompletableFuture<InfoItem> scmInfo, File file) throws TimeoutException {
+            long timeoutNanos = Math.min(lookupTimeoutNanos, deadlineNanos - System.nanoTime());
+            try {
+                return scmInfo.get(Math.max(0, timeoutNanos), TimeUnit.NANOSECONDS);
+            } catch (ExecutionException e) {
+                LOGGER.debug("Failed to get SCM info for file \"{}\"", file, e.getCause());
+                failedFiles.add(file);
+                firstFailure.compareAndSet(null, e.getCause());
+                return null;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new TimeoutException("Interrupted while waiting for SCM info");
+            }
+        }
+
+        private synchronized void close() {
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+        }
+    }
+
+    /**
+     * Gets the SCM state of the site being rendered, looking up the SCM repository if not done yet.
      * @param siteRenderingContext
-     * @return an Optional containing the SCM repository if found, or an empty Optional if not found or if an error occurs while trying to find it.
+     * @return the site state, with or without SCM repository
      */
-    private Optional<ScmRepository> getScmRepository(SiteRenderingContext siteRenderingContext) {
-        if (siteRenderingContext.getAttributes().containsKey(KEY_SCM_REPOSITORY)) {
-            return Optional.ofNullable(
-                    (ScmRepository) siteRenderingContext.getAttributes().get(KEY_SCM_REPOSITORY));
-        } else {
-            Optional<ScmRepository> scmRepository =
-                    getScmRepository(scmManager, siteRenderingContext.getRootDirectory());
-            siteRenderingContext.putAttribute(KEY_SCM_REPOSITORY, scmRepository.orElse(null));
-            return scmRepository;
+    private SiteState getSiteState(SiteRenderingContext siteRenderingContext) {
+        return siteRenderingContext.computeSiteStateIfAbsent(SiteState.class, () -> {
+            Object cacheFile = siteRenderingContext.getAttributes().get(CACHE_FILE_ATTRIBUTE);
+            return new SiteState(
+                    getScmWorkTree(scmManager, siteRenderingContext.getRootDirectory(), scmWorkTrees)
+                            .orElse(null),
+                    (cacheFile != null) ? new File(cacheFile.toString()) : null,
+                    getTimeout(siteRenderingContext, LOOKUP_TIMEOUT_ATTRIBUTE, DEFAULT_LOOKUP_TIMEOUT),
+                    getTimeout(siteRenderingContext, TOTAL_TIMEOUT_ATTRIBUTE, DEFAULT_TOTAL_TIMEOUT));
+        });
+    }
+
+    private static long getTimeout(SiteRenderingContext siteRenderingContext, String name, long defaultTimeout) {
+        Object timeout = siteRenderingContext.getAttributes().get(name);
+        if (timeout instanceof Number) {
+            return ((Number) timeout).longValue();
+        } else if (timeout != null) {
+            try {
+                return Long.parseLong(timeout.toString().trim());
+            } catch (NumberFormatException e) {
+                LOGGER.warn("Invalid {} attribute \"{}\", using {} ms", name, timeout, defaultTimeout);
+            }
         }
+        return defaultTimeout;
+    }
+
+    /**
+     * Whether a document is generated, like the ones in {@code target/generated-site}: generated documents are never
+     * in SCM.
+     * @param docRenderingContext the document rendering context
+     * @return {@code true} if the document is rendered from a non-editable Doxia source
+     */
+    private static boolean isGenerated(DocumentRenderingContext docRenderingContext) {
+        return docRenderingContext.isDoxiaSource() && !docRenderingContext.isEditable();
+    }
+
+    private static File getInputFile(DocumentRenderingContext docRenderingContext) {
+        return new File(docRenderingContext.getBasedir(), docRenderingContext.getInputPath());
     }
 
     static Optional<ScmRepository> getScmRepository(ScmManager scmManager, File directory) {
-        Optional<ScmRepository> scmRepository = scmManager.makeProviderScmRepository(directory);
-        if (scmRepository.isPresent()) {
-            LOGGER.debug("Found SCM repository for directory \"{}\"", directory);
-        } else {
-            LOGGER.debug("No SCM repository found for directory {}", directory);
-            File parentDirectory = directory.getParentFile();
-            if (parentDirectory != null) {
-                return getScmRepository(scmManager, parentDirectory);
+        return getScmWorkTree(scmManager, directory, new HashMap<>()).map(ScmWorkTree::getScmRepository);
+    }
+
+    /**
+     * Looks up the SCM work tree of a directory or of its nearest parent directory, reusing the work trees already
+     * found for the directory or its parent directories if their SCM metadata did not change.
+     * @param scmManager
+     * @param directory the directory
+     * @param scmWorkTrees the SCM work tree of the directories already found in one, updated with the directories
+     * looked up by this call if an SCM repository is found
+     * @return the SCM work tree, if any
+     */
+    static Optional<ScmWorkTree> getScmWorkTree(
+            ScmManager scmManager, File directory, Map<Path, ScmWorkTree> scmWorkTrees) {
+        List<Path> lookedUpDirectories = new ArrayList<>();
+        Optional<ScmWorkTree> scmWorkTree = Optional.empty();
+        for (Path path = directory.toPath().toAbsolutePath().normalize(); path != null; path = path.getParent()) {
+            ScmWorkTree knownScmWorkTree = scmWorkTrees.get(path);
+            if (knownScmWorkTree != null) {
+                if (knownScmWorkTree.isValid()) {
+                    LOGGER.debug("Reusing SCM repository lookup of directory \"{}\"", path);
+                    scmWorkTree = Optional.of(knownScmWorkTree);
+                    break;
+                }
+                LOGGER.debug(
+                        "SCM metadata of directory \"{}\" changed, looking up its SCM repository again",
+                        knownScmWorkTree.getRoot());
+                scmWorkTrees.values().removeIf(knownScmWorkTree::equals);
+            }
+            lookedUpDirectories.add(path);
+            Optional<ScmRepository> scmRepository = scmManager.makeProviderScmRepository(path.toFile());
+            if (scmRepository.isPresent()) {
+                LOGGER.debug("Found SCM repository for directory \"{}\"", path);
+                scmWorkTree = Optional.of(new ScmWorkTree(path, scmRepository.get()));
+                break;
+            }
+            LOGGER.debug("No SCM repository found for directory {}", path);
+        }
+        // the directories below the one where the repository was found share it
+        if (scmWorkTree.isPresent()) {
+            for (Path path : lookedUpDirectories) {
+                scmWorkTrees.put(path, scmWorkTree.get());
+            }
+        }
+        return scmWorkTree;
+    }
+
+    /**
+     * Retrieves the SCM info of a file: failures are not logged, but reported once for the whole site.
+     * @param scmManager
+     * @param scmRepository
+     * @param file the file
+     * @return the SCM info, {@code null} if none
+     * @throws ScmException if the SCM info could not be retrieved
+     */
+    static InfoItem getScmInfo(ScmManager scmManager, ScmRepository scmRepository, File file) throws ScmException {
+        if (isGitHistoryReadable(scmRepository)) {
+            try {
+                return GitHistoryReader.getScmInfos(file.getParentFile(), Collections.singletonList(file)).get(file);
+            } catch (IOException | RuntimeException e) {
+                LOGGER.debug("Failed to read Git history of file \"{}\", falling back to SCM info", file, e);
             }
         }
-        return scmRepository;
+        ScmFileSet fileSet = new ScmFileSet(file.getParentFile(), Collections.singletonList(file));
+        InfoScmResult infos = scmManager
+                .getProviderByRepository(scmRepository)
+                .info(scmRepository.getProviderRepository(), fileSet, null);
+        if (infos == null || !infos.isSuccess()) {
+            throw new ScmException("Failed to get SCM info for file \"" + file + "\": "
+                    + ((infos != null) ? infos.getProviderMessage() : "no result"));
+        }
+        if (infos.getInfoItems().isEmpty()) {
+            LOGGER.debug("No SCM info for file \"{}\"", file);
+            return null;
+        }
+        return infos.getInfoItems().get(0);
+    }
+
+    /**
+     * Retrieves the SCM info of a file on the lookup executor of a site, failures being reported when waiting for it.
+     */
+    private CompletableFuture<InfoItem> getScmInfoAsync(SiteState siteState, File file) {
+        return CompletableFuture.supplyAsync(
+                () -> {
+                    try {
+                        return getScmInfo(scmManager, siteState.scmRepository, file);
+                    } catch (ScmException e) {
+                        throw new CompletionException(e);
+                    }
+                },
+                siteState.getExecutor());
     }
 
-    static InfoItem getScmInfo(ScmManager scmManager, ScmRepository scmRepository, File file) {
+    /**
+     * Retrieves the SCM info of many files at once from the change log of their deepest common directory, with a
+     * single SCM command instead of one per file. Git history is read in process when JGit is available.
+     * @param scmManager
+     * @param scmRepository
+     * @param files the files
+     * @return the SCM info by file, without the files never committed, or {@code null} if the change log could not be
+     * retrieved
+     */
+    static Map<File, InfoItem> getScmInfos(ScmManager scmManager, ScmRepository scmRepository, Collection<File> files) {
+        Path basedir = getCommonDirectory(files);
+        if (basedir == null) {
+            return Collections.emptyMap();
+        }
+        if (isGitHistoryReadable(scmRepository)) {
+            try {
+                return GitHistoryReader.getScmInfos(basedir.toFile(), files);
+            } catch (IOException | RuntimeException e) {
+                LOGGER.warn(
+                        "Failed to read Git history of directory \"{}\", falling back to SCM change log", basedir, e);
+            }
+        }
+        List<ChangeSet> changeSets = getChangeSets(scmManager, scmRepository, basedir, null, null);
+        return (changeSets != null) ? getScmInfos(changeSets, files) : null;
+    }
+
+    /**
+     * Retrieves the SCM info of many files at once like {@link #getScmInfos(ScmManager, ScmRepository, Collection)},
+     * reusing the SCM info cached for the last revision of their work tree. Only the files touched by the revisions
+     * since the cached one, and the files whose content changed, are retrieved from SCM.
+     * @param scmManager
+     * @param scmWorkTree the SCM work tree of the files
+     * @param files the files
+     * @param cacheFile the cache file, {@code null} to retrieve the SCM info of every file
+     * @return the SCM info by file, without the files never committed, or {@code null} if the change log could not be
+     * retrieved
+     */
+    static Map<File, InfoItem> getScmInfos(
+            ScmManager scmManager, ScmWorkTree scmWorkTree, Collection<File> files, File cacheFile) {
+        ScmRepository scmRepository = scmWorkTree.getScmRepository();
+        if (cacheFile == null || files.isEmpty()) {
+            return getScmInfos(scmManager, scmRepository, files);
+        }
+
+        Path root = scmWorkTree.getRoot();
+        ScmInfoCache cache;
         try {
-            ScmFileSet fileSet = new ScmFileSet(file.getParentFile(), Collections.singletonList(file));
-            InfoScmResult infos = scmManager
-                    .getProviderByRepository(scmRepository)
-                    .info(scmRepository.getProviderRepository(), fileSet, null);
-            if (infos != null && infos.isSuccess() && !infos.getInfoItems().isEmpty()) {
-                return infos.getInfoItems().get(0);
+            cache = ScmInfoCache.load(cacheFile, root);
+        } catch (IOException e) {
+            LOGGER.warn("Failed to read SCM info cache \"{}\"", cacheFile, e);
+            return getScmInfos(scmManager, scmRepository, files);
+        }
+
+        // the last change set of the work tree identifies the revision of the files: it did not change as long as
+        // the commit checked out in a Git work tree, read without running any SCM command, did not change
+        String head = scmWorkTree.readGitHead();
+        String revision = (head != null && head.equals(cache.getHead()))
+                ? cache.getRevision()
+                : getLastRevision(scmManager, scmRepository, root);
+        if (revision == null) {
+            return getScmInfos(scmManager, scmRepository, files);
+        }
+
+        Map<File, InfoItem> scmInfos = new HashMap<>();
+        if (cache.getRevision() != null && !revision.equals(cache.getRevision())) {
+            // only the files touched by the new change sets have outdated SCM info, whether rendered now or not
+            List<File> otherFiles = cache.getOtherDocuments(files);
+            List<File> changedFiles = new ArrayList<>(files);
+            changedFiles.addAll(otherFiles);
+            Map<File, InfoItem> newScmInfos =
+                    getScmInfosSince(scmManager, scmRepository, root, cache.getRevision(), changedFiles);
+            if (newScmInfos != null) {
+                for (File otherFile : otherFiles) {
+                    InfoItem newScmInfo = newScmInfos.remove(otherFile);
+                    if (newScmInfo != null) {
+                        cache.update(otherFile, newScmInfo);
+                    }
+                }
+                scmInfos.putAll(newScmInfos);
             } else {
-                LOGGER.warn("Failed to get SCM info for file \"{}\": {}", file, infos);
+                cache.clear();
+            }
+        }
+
+        Map<File, String> hashes = new HashMap<>();
+        List<File> uncachedFiles = new ArrayList<>();
+        for (File file : files) {
+            try {
+                String hash = ScmInfoCache.hash(file);
+                hashes.put(file, hash);
+                if (!scmInfos.containsKey(file)) {
+                    if (cache.contains(file, hash)) {
+                        scmInfos.put(file, cache.get(file));
+                    } else {
+                        uncachedFiles.add(file);
+                    }
+                }
+            } catch (IOException e) {
+                LOGGER.debug("Failed to read file \"{}\", its SCM info is not cached", file, e);
+                uncachedFiles.add(file);
+            }
+        }
+        if (!uncachedFiles.isEmpty()) {
+            Map<File, InfoItem> uncachedScmInfos = getScmInfos(scmManager, scmRepository, uncachedFiles);
+            if (uncachedScmInfos == null) {
+                return null;
+            }
+            scmInfos.putAll(uncachedScmInfos);
+        }
+
+        // files never committed are cached too, until a new change set touches them
+        for (Map.Entry<File, String> hash : hashes.entrySet()) {
+            cache.put(hash.getKey(), hash.getValue(), scmInfos.get(hash.getKey()));
+        }
+        try {
+            cache.store(revision, head);
+        } catch (IOException e) {
+            LOGGER.warn("Failed to write SCM info cache \"{}\"", cacheFile, e);
+        }
+        scmInfos.values().removeIf(Objects::isNull);
+        return scmInfos;
+    }
+
+    private static String getLastRevision(ScmManager scmManager, ScmRepository scmRepository, Path directory) {
+        if (isGitHistoryReadable(scmRepository)) {
+            try {
+                return GitHistoryReader.getLastRevision(directory.toFile());
+            } catch (IOException | RuntimeException e) {
+                LOGGER.warn(
+                        "Failed to read Git history of directory \"{}\", falling back to SCM change log", directory, e);
+            }
+        }
+        List<ChangeSet> lastChangeSets = getChangeSets(scmManager, scmRepository, directory, null, 1);
+        return (lastChangeSets != null && !lastChangeSets.isEmpty()) ? lastChangeSets.get(0).getRevision() : null;
+    }
+
+    /**
+     * Retrieves the SCM info of the files changed since a revision of their common directory.
+     * @return the SCM info by file, only for the files changed since the revision, or {@code null} if the change log
+     * could not be retrieved
+     */
+    private static Map<File, InfoItem> getScmInfosSince(
+            ScmManager scmManager,
+            ScmRepository scmRepository,
+            Path directory,
+            String startRevision,
+            Collection<File> files) {
+        if (isGitHistoryReadable(scmRepository)) {
+            try {
+                return GitHistoryReader.getScmInfos(directory.toFile(), startRevision, files);
+            } catch (IOException | RuntimeException e) {
+                LOGGER.warn(
+                        "Failed to read Git history of directory \"{}\", falling back to SCM change log", directory, e);
+            }
+        }
+        List<ChangeSet> changeSets = getChangeSets(scmManager, scmRepository, directory, startRevision, null);
+        return (changeSets != null) ? getScmInfos(changeSets, files) : null;
+    }
+
+    private static boolean isGitHistoryReadable(ScmRepository scmRepository) {
+        return JGIT_AVAILABLE && "git".equals(scmRepository.getProvider());
+    }
+
+    private static boolean isClassAvailable(String className) {
+        try {
+            Class.forName(className, false, ScmAttributesContextCustomizer.class.getClassLoader());
+            return true;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+
+    private static Path getCommonDirectory(Collection<File> files) {
+        Path directory = null;
+        for (File file : files) {
+            Path path = file.toPath().toAbsolutePath().normalize();
+            if (directory == null) {
+                directory = path.getParent();
+            }
+            while (!path.startsWith(directory)) {
+                directory = directory.getParent();
+            }
+        }
+        return directory;
+    }
+
+    private static List<ChangeSet> getChangeSets(
+            ScmManager scmManager, ScmRepository scmRepository, Path directory, String startRevision, Integer limit) {
+        ChangeLogScmResult changeLog;
+        try {
+            ChangeLogScmRequest request = new ChangeLogScmRequest(scmRepository, new ScmFileSet(directory.toFile()));
+            if (startRevision != null) {
+                request.setStartRevision(new ScmRevision(startRevision));
+            }
+            if (limit != null) {
+                request.setLimit(limit);
+            }
+            changeLog = scmManager.getProviderByRepository(scmRepository).changeLog(request);
+        } catch (ScmException | UnsupportedOperationException e) {
+            LOGGER.warn("Failed to get SCM change log of directory \"{}\"", directory, e);
+            return null;
+        }
+        if (changeLog == null || !changeLog.isSuccess() || changeLog.getChangeLog() == null) {
+            LOGGER.warn("Failed to get SCM change log of directory \"{}\": {}", directory, changeLog);
+            return null;
+        }
+        return changeLog.getChangeLog().getChangeSets();
+    }
+
+    private static Map<File, InfoItem> getScmInfos(List<ChangeSet> changeSets, Collection<File> files) {
+        // change files are named relatively to the repository root: index files by name to match them by suffix
+        Map<String, List<File>> filesByName = new HashMap<>();
+        for (File file : files) {
+            filesByName.computeIfAbsent(file.getName(), name -> new ArrayList<>()).add(file);
+        }
+
+        Map<File, InfoItem> scmInfos = new HashMap<>();
+        Map<File, Date> lastChangedDates = new HashMap<>();
+        for (ChangeSet changeSet : changeSets) {
+            for (ChangeFile changeFile : changeSet.getFiles()) {
+                String name = changeFile.getName().replace('\\', '/');
+                String fileName = name.substring(name.lastIndexOf('/') + 1);
+                for (File file : filesByName.getOrDefault(fileName, Collections.emptyList())) {
+                    String path = file.toPath().toAbsolutePath().normalize().toString().replace('\\', '/');
+                    Date lastChangedDate = lastChangedDates.get(file);
+                    if (path.endsWith('/' + name)
+                            && (lastChangedDate == null
+                                    || (changeSet.getDate() != null && changeSet.getDate().after(lastChangedDate)))) {
+                        lastChangedDates.put(file, changeSet.getDate());
+                        scmInfos.put(file, toInfoItem(changeSet));
+                    }
+                }
+            }
+        }
+        return scmInfos;
+    }
+
+    private static InfoItem toInfoItem(ChangeSet changeSet) {
+        InfoItem scmInfo = new InfoItem();
+        scmInfo.setRevision(changeSet.getRevision());
+        scmInfo.setLastChangedRevision(changeSet.getRevision());
+        scmInfo.setLastChangedAuthor(changeSet.getAuthor());
+        if (changeSet.getDate() != null) {
+            scmInfo.setLastChangedDateTime(changeSet.getDate().toInstant().atOffset(ZoneOffset.UTC));
+        }
+        return scmInfo;
+    }
+
+    @Override
+    public Set<String> getContextKeys() {
+        return CONTEXT_KEYS;
+    }
+
+    @Override
+    public void beforeSite(SiteRenderingContext siteRenderingContext) {
+        getSiteState(siteRenderingContext);
+    }
+
+    @Override
+    public void afterSite(SiteRenderingContext siteRenderingContext) {
+        SiteState siteState = siteRenderingContext.removeSiteState(SiteState.class);
+        if (siteState != null) {
+            siteState.close();
+            if (!siteState.timedOutFiles.isEmpty()) {
+                LOGGER.warn(
+                        "SCM info of {} documents was not retrieved in time, their file modification date was used"
+                                + " instead (enable debug logging for the list of documents)",
+                        siteState.timedOutFiles.size());
+            }
+            if (!siteState.failedFiles.isEmpty()) {
+                LOGGER.warn(
+                        "Failed to get SCM info of {} documents (enable debug logging for the list of documents),"
+                                + " first failure:",
+                        siteState.failedFiles.size(),
+                        siteState.firstFailure.get());
             }
-        } catch (ScmException e) {
-            LOGGER.warn("Failed to get SCM info for file \"{}\"", file, e);
         }
-        return null;
+    }
+
+    @Override
+    public void prefetch(
+            Collection<DocumentRenderingContext> docRenderingContexts, SiteRenderingContext siteRenderingContext) {
+        SiteState siteState = getSiteState(siteRenderingContext);
+        if (siteState.scmRepository == null) {
+            return;
+        }
+        siteState.restartDeadline();
+        List<File> inputFiles = docRenderingContexts.stream()
+                .filter(docRenderingContext -> !isGenerated(docRenderingContext))
+                .map(ScmAttributesContextCustomizer::getInputFile)
+                .filter(File::exists)
+                .collect(Collectors.toList());
+        if (inputFiles.isEmpty()) {
+            return;
+        }
+
+        ExecutorService executor = siteState.getExecutor();
+        CompletableFuture<Map<File, InfoItem>> batch = CompletableFuture.supplyAsync(
+                () -> getScmInfos(scmManager, siteState.scmWorkTree, inputFiles, siteState.cacheFile), executor);
+        for (File inputFile : inputFiles) {
+            // replace previously prefetched info, which may be outdated when rendering again
+            siteState.scmInfos.put(
+                    inputFile,
+                    batch.thenCompose(scmInfos -> (scmInfos != null)
+                            ? CompletableFuture.completedFuture(scmInfos.get(inputFile))
+                            : getScmInfoAsync(siteState, inputFile)));
+        }
     }
 
     @Override
     public void customizeContext(
             Context context, DocumentRenderingContext docRenderingContext, SiteRenderingContext siteRenderingContext) {
-        File inputFile = new File(docRenderingContext.getBasedir(), docRenderingContext.getInputPath());
+        File inputFile = getInputFile(docRenderingContext);
         if (!inputFile.exists()) {
             LOGGER.debug("Input file \"{}\" does not exist, cannot retrieve SCM info", inputFile);
             return;
         }
-        Optional<ScmRepository> scmRepository = getScmRepository(siteRenderingContext);
 
-        final InfoItem scmInfo;
-        if (scmRepository.isPresent()) {
-            scmInfo = getScmInfo(scmManager, scmRepository.get(), inputFile);
-        } else {
-            scmInfo = null;
+        if (isGenerated(docRenderingContext)) {
+            LOGGER.debug("Input file \"{}\" is generated, it has no SCM info", inputFile);
+            return;
+        }
+
+        SiteState siteState = getSiteState(siteRenderingContext);
+
+        CompletableFuture<InfoItem> scmInfoLookup = siteState.scmInfos.get(inputFile);
+        if (scmInfoLookup == null && siteState.scmRepository != null) {
+            scmInfoLookup = getScmInfoAsync(siteState, inputFile);
+        }
+        InfoItem scmInfo = null;
+        if (scmInfoLookup != null) {
+            try {
+                scmInfo = siteState.await(scmInfoLookup, inputFile);
+            } catch (TimeoutException e) {
+                LOGGER.debug("SCM info of file \"{}\" not retrieved in time, using its modification date", inputFile);
+                siteState.timedOutFiles.add(inputFile);
+                context.put(ATTRIBUTE_NAME_SCM_MODIFIED_DATE, new Date(inputFile.lastModified()));
+                return;
+            }
         }
 
         if (scmInfo != null) {
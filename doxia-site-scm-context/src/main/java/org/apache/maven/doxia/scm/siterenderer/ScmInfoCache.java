@@ -0,0 +1,268 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.doxia.scm.siterenderer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+
+import org.apache.maven.doxia.siterenderer.Fingerprint;
+import org.apache.maven.scm.command.info.InfoItem;
+
+/**
+ * SCM info of documents persisted between site renderings, valid for a revision of their SCM work tree.
+ * Each entry is keyed by the document path relative to the work tree root and checked against the document content
+ * hash: a document changed since it was cached, like an uncommitted or checked out document, is retrieved again.
+ * Entries of the documents not rendered by a site rendering are kept for the next ones, as long as the documents
+ * exist.
+ *
+ * @since 2.2.0
+ */
+final class ScmInfoCache {
+    private static final String DIRECTORY_KEY = "directory";
+
+    private static final String REVISION_KEY = "revision";
+
+    private static final String HEAD_KEY = "head";
+
+    private static final String FILE_KEY_PREFIX = "file.";
+
+    private final File file;
+
+    private final Path directory;
+
+    private final Properties entries = new Properties();
+
+    private ScmInfoCache(File file, Path directory) {
+        this.file = file;
+        this.directory = directory;
+    }
+
+    /**
+     * Load the SCM info cached for a work tree, an empty cache being used if none exists yet or if the cache was
+     * written for another work tree.
+     *
+     * @param file the cache file
+     * @param directory the root directory of the work tree of the cached documents
+     * @return the SCM info cache
+     * @throws IOException if the cache file cannot be read
+     */
+    static ScmInfoCache load(File file, Path directory) throws IOException {
+        ScmInfoCache cache = new ScmInfoCache(file, directory);
+        if (file.isFile()) {
+            try (InputStream in = Files.newInputStream(file.toPath())) {
+                cache.entries.load(in);
+            }
+            if (!directory.toString().equals(cache.entries.getProperty(DIRECTORY_KEY))) {
+                cache.clear();
+            }
+        }
+        return cache;
+    }
+
+    /**
+     * Get the revision of the work tree the cached SCM info was retrieved for.
+     *
+     * @return the revision, or {@code null} if nothing is cached
+     */
+    String getRevision() {
+        return entries.getProperty(REVISION_KEY);
+    }
+
+    /**
+     * Get the commit checked out in the Git work tree when the cached SCM info was retrieved.
+     *
+     * @return the commit id, or {@code null} if not a Git work tree or if nothing is cached
+     */
+    String getHead() {
+        return entries.getProperty(HEAD_KEY);
+    }
+
+    /**
+     * Get the cached documents other than the given ones.
+     *
+     * @param documents the documents
+     * @return the other cached documents
+     */
+    List<File> getOtherDocuments(Collection<File> documents) {
+        Set<String> keys = new HashSet<>();
+        for (File document : documents) {
+            keys.add(getKey(document));
+        }
+        List<File> otherDocuments = new ArrayList<>();
+        for (String key : entries.stringPropertyNames()) {
+            if (key.startsWith(FILE_KEY_PREFIX) && !keys.contains(key)) {
+                otherDocuments.add(getDocument(key));
+            }
+        }
+        return otherDocuments;
+    }
+
+    /**
+     * Whether SCM info is cached for a document with the given content.
+     *
+     * @param document the document
+     * @param hash the document content hash
+     * @return {@code true} if the document SCM info is cached, even if the document was never committed
+     */
+    boolean contains(File document, String hash) {
+        String entry = entries.getProperty(getKey(document));
+        return entry != null && entry.startsWith(hash + '\t');
+    }
+
+    /**
+     * Get the cached SCM info of a document, checked with {@link #contains(File, String)}.
+     *
+     * @param document the document
+     * @return the SCM info, or {@code null} if the document was never committed
+     */
+    InfoItem get(File document) {
+        // hash, revision, date and author
+        String[] fields = entries.getProperty(getKey(document)).split("\t", 4);
+        if (fields[1].isEmpty() && fields[2].isEmpty() && fields[3].isEmpty()) {
+            return null;
+        }
+        InfoItem scmInfo = new InfoItem();
+        if (!fields[1].isEmpty()) {
+            scmInfo.setRevision(fields[1]);
+            scmInfo.setLastChangedRevision(fields[1]);
+        }
+        if (!fields[2].isEmpty()) {
+            scmInfo.setLastChangedDateTime(Instant.ofEpochMilli(Long.parseLong(fields[2])).atOffset(ZoneOffset.UTC));
+        }
+        if (!fields[3].isEmpty()) {
+            scmInfo.setLastChangedAuthor(fields[3]);
+        }
+        return scmInfo;
+    }
+
+    /**
+     * Cache the SCM info of a document.
+     *
+     * @param document the document
+     * @param hash the document content hash
+     * @param scmInfo the SCM info, {@code null} if the document was never committed
+     */
+    void put(File document, String hash, InfoItem scmInfo) {
+        StringBuilder entry = new StringBuilder(hash).append('\t');
+        if (scmInfo != null) {
+            if (scmInfo.getLastChangedRevision() != null) {
+                entry.append(scmInfo.getLastChangedRevision());
+            }
+            entry.append('\t');
+            if (scmInfo.getLastChangedDateTime() != null) {
+                entry.append(scmInfo.getLastChangedDateTime().toInstant().toEpochMilli());
+            }
+            entry.append('\t');
+            if (scmInfo.getLastChangedAuthor() != null) {
+                entry.append(scmInfo.getLastChangedAuthor().replace('\t', ' '));
+            }
+        } else {
+            entry.append("\t\t");
+        }
+        entries.setProperty(getKey(document), entry.toString());
+    }
+
+    /**
+     * Update the cached SCM info of a document, keeping the content hash it was cached for.
+     *
+     * @param document the cached document
+     * @param scmInfo the new SCM info
+     */
+    void update(File document, InfoItem scmInfo) {
+        String entry = entries.getProperty(getKey(document));
+        if (entry != null) {
+            put(document, entry.substring(0, entry.indexOf('\t')), scmInfo);
+        }
+    }
+
+    void clear() {
+        entries.clear();
+    }
+
+    /**
+     * Store the cache for a revision of the work tree, forgetting the documents that no longer exist.
+     *
+     * @param revision the revision the cached SCM info is valid for
+     * @param head the commit checked out in the Git work tree, {@code null} if not known
+     * @throws IOException if the cache file cannot be written
+     */
+    void store(String revision, String head) throws IOException {
+        entries.keySet()
+                .removeIf(key -> key.toString().startsWith(FILE_KEY_PREFIX)
+                        && !getDocument(key.toString()).exists());
+        entries.setProperty(DIRECTORY_KEY, directory.toString());
+        entries.setProperty(REVISION_KEY, revision);
+        if (head != null) {
+            entries.setProperty(HEAD_KEY, head);
+        } else {
+            entries.remove(HEAD_KEY);
+        }
+
+        Path target = file.toPath().toAbsolutePath();
+        Files.createDirectories(target.getParent());
+        // write to a temporary file first, for concurrent builds to never read a partially written cache
+        Path tmp = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+        try {
+            try (OutputStream out = Files.newOutputStream(tmp)) {
+                entries.store(out, "Doxia Sitetools SCM info cache");
+            }
+            try {
+                Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    private String getKey(File document) {
+        Path path = directory.relativize(document.toPath().toAbsolutePath().normalize());
+        return FILE_KEY_PREFIX + path.toString().replace('\\', '/');
+    }
+
+    private File getDocument(String key) {
+        return directory.resolve(key.substring(FILE_KEY_PREFIX.length())).normalize().toFile();
+    }
+
+    /**
+     * Compute the hash of a document content.
+     *
+     * @param document the document
+     * @return the fingerprint of the document content, in hexadecimal
+     * @throws IOException if the document cannot be read
+     */
+    static String hash(File document) throws IOException {
+        return new Fingerprint().add(document).toHex();
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.doxia.scm.siterenderer;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.maven.scm.repository.ScmRepository;
+
+/**
+ * SCM work tree: the SCM repository found for a directory, with the root directory where it was found and the SCM
+ * metadata this root directory contained. A work tree found once is reused as long as its metadata did not change: a
+ * repository moved, cloned again or converted to another SCM is looked up again.
+ *
+ * @since 2.2.0
+ */
+final class ScmWorkTree {
+    /** names of the SCM metadata files or directories, in the root directory of the work trees of the SCM providers */
+    private static final List<String> METADATA_NAMES = Arrays.asList(".git", ".svn", ".hg", ".bzr", "CVS");
+
+    private final Path root;
+
+    private final ScmRepository scmRepository;
+
+    private final String metadata;
+
+    /**
+     * @param root the directory where the SCM repository was found
+     * @param scmRepository the SCM repository
+     */
+    ScmWorkTree(Path root, ScmRepository scmRepository) {
+        this.root = root;
+        this.scmRepository = scmRepository;
+        this.metadata = readMetadata(root);
+    }
+
+    Path getRoot() {
+        return root;
+    }
+
+    ScmRepository getScmRepository() {
+        return scmRepository;
+    }
+
+    /**
+     * Whether the SCM metadata of the work tree is still the one found: checking it only reads file attributes.
+     *
+     * @return {@code false} if the SCM metadata was removed, replaced or created since the work tree was found
+     */
+    boolean isValid() {
+        return metadata.equals(readMetadata(root));
+    }
+
+    /**
+     * Read the commit checked out in a Git work tree from the files of its Git directory, without running any SCM
+     * command: {@code HEAD}, then the loose or packed reference it points to.
+     *
+     * @return the commit id, or {@code null} if this is not a Git work tree or if the commit cannot be read from its
+     * files, like with other reference storage formats
+     */
+    String readGitHead() {
+        try {
+            Path gitDirectory = root.resolve(".git");
+            if (Files.isRegularFile(gitDirectory)) {
+                // linked work tree or submodule
+                String gitFile = read(gitDirectory);
+                if (!gitFile.startsWith("gitdir:")) {
+                    return null;
+                }
+                gitDirectory = root.resolve(gitFile.substring("gitdir:".length()).trim());
+            } else if (!Files.isDirectory(gitDirectory)) {
+                return null;
+            }
+            // references are shared by the linked work trees, in the common directory
+            Path commonDirectory = gitDirectory;
+            Path commonDirectoryFile = gitDirectory.resolve("commondir");
+            if (Files.isRegularFile(commonDirectoryFile)) {
+                commonDirectory = gitDirectory.resolve(read(commonDirectoryFile));
+            }
+
+            String head = read(gitDirectory.resolve("HEAD"));
+            if (!head.startsWith("ref:")) {
+                // detached HEAD
+                return head;
+            }
+            String ref = head.substring("ref:".length()).trim();
+            Path looseRef = commonDirectory.resolve(ref);
+            if (Files.isRegularFile(looseRef)) {
+                return read(looseRef);
+            }
+            Path packedRefs = commonDirectory.resolve("packed-refs");
+            if (Files.isRegularFile(packedRefs)) {
+                for (String line : Files.readAllLines(packedRefs, StandardCharsets.UTF_8)) {
+                    if (line.endsWith(' ' + ref)) {
+                        return line.substring(0, line.indexOf(' '));
+                    }
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            // unreadable Git directory: the revision is read from SCM
+        }
+        return null;
+    }
+
+    private static String read(Path file) throws IOException {
+        return new String(Files.readAllBytes(file), StandardCharsets.UTF_8).trim();
+    }
+
+    /**
+     * Identify the SCM metadata of a directory, by name and file key (or creation time when the file system has no
+     * file keys) of each SCM metadata file or directory.
+     */
+    private static String readMetadata(Path directory) {
+        StringBuilder metadata = new StringBuilder();
+        for (String name : METADATA_NAMES) {
+            BasicFileAttributes attributes;
+            try {
+                attributes = Files.readAttributes(directory.resolve(name), BasicFileAttributes.class);
+            } catch (IOException e) {
+                // no such metadata
+                continue;
+            }
+            Object key = attributes.fileKey();
+            metadata.append(name)
+                    .append(':')
+                    .append((key != null) ? key : attributes.creationTime())
+                    .append('\n');
+        }
+        return metadata.toString();
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.doxia.scm.siterenderer;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+
+import org.apache.maven.scm.command.info.InfoItem;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class GitHistoryReaderTest {
+    private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+
+    @TempDir
+    File repositoryDirectory;
+
+    @Test
+    void lastChangePerFile() throws Exception {
+        File siteDirectory = new File(repositoryDirectory, "src/site");
+        File index = new File(siteDirectory, "markdown/index.md");
+        File about = new File(siteDirectory, "markdown/about.md");
+        File siteXml = new File(siteDirectory, "site.xml");
+        File uncommitted = new File(siteDirectory, "markdown/draft.md");
+
+        RevCommit topic;
+        try (Git git = Git.init().setDirectory(repositoryDirectory).call()) {
+            write(index, "index");
+            write(about, "about");
+            write(siteXml, "<site/>");
+            commit(git, "first", ident("First", 1000000L));
+
+            write(index, "new index");
+            commit(git, "second", ident("Second", 2000000L));
+
+            // branch modifying about.md, merged afterwards: the merge commit itself is not a change
+            git.branchCreate().setName("topic").call();
+            write(siteXml, "<site name=\"new\"/>");
+            commit(git, "third", ident("Third", 3000000L));
+            git.checkout().setName("topic").call();
+            write(about, "new about");
+            topic = commit(git, "topic", ident("Topic", 2500000L));
+            git.checkout().setName("master").call();
+            git.merge().include(topic).setMessage("merge").call();
+        }
+        write(uncommitted, "draft");
+
+        Map<File, InfoItem> scmInfos =
+                GitHistoryReader.getScmInfos(siteDirectory, Arrays.asList(index, about, siteXml, uncommitted));
+
+        assertEquals("Second <second@example.com>", scmInfos.get(index).getLastChangedAuthor());
+        assertEquals(2000000L, scmInfos.get(index).getLastChangedDateTime().toInstant().toEpochMilli());
+        assertEquals(topic.name(), scmInfos.get(about).getLastChangedRevision());
+        assertEquals("Topic <topic@example.com>", scmInfos.get(about).getLastChangedAuthor());
+        assertEquals("Third <third@example.com>", scmInfos.get(siteXml).getLastChangedAuthor());
+        assertFalse(scmInfos.containsKey(uncommitted));
+    }
+
+    @Test
+    void changesSinceRevision() throws Exception {
+        File siteDirectory = new File(repositoryDirectory, "src/site");
+        File index = new File(siteDirectory, "markdown/index.md");
+        File about = new File(siteDirectory, "markdown/about.md");
+        File readme = new File(repositoryDirectory, "README.md");
+
+        RevCommit first;
+        RevCommit second;
+        RevCommit third;
+        try (Git git = Git.init().setDirectory(repositoryDirectory).call()) {
+            write(index, "index");
+            write(about, "about");
+            write(readme, "readme");
+            first = commit(git, "first", ident("First", 1000000L));
+
+            write(index, "new index");
+            second = commit(git, "second", ident("Second", 2000000L));
+
+            // outside of the site directory
+            write(readme, "new readme");
+            third = commit(git, "third", ident("Third", 3000000L));
+        }
+
+        assertEquals(second.name(), GitHistoryReader.getLastRevision(siteDirectory));
+        assertEquals(third.name(), GitHistoryReader.getLastRevision(repositoryDirectory));
+
+        Map<File, InfoItem> scmInfos =
+                GitHistoryReader.getScmInfos(siteDirectory, first.name(), Arrays.asList(index, about));
+        assertEquals(Collections.singleton(index), scmInfos.keySet());
+        assertEquals(second.name(), scmInfos.get(index).getLastChangedRevision());
+
+        assertThrows(
+                IOException.class,
+                () -> GitHistoryReader.getScmInfos(siteDirectory, "unknown", Collections.singletonList(index)));
+    }
+
+    @Test
+    void noRepository() {
+        File index = new File(repositoryDirectory, "index.md");
+        assertThrows(
+                IOException.class,
+                () -> GitHistoryReader.getScmInfos(repositoryDirectory, Collections.singletonList(index)));
+    }
+
+    private static PersonIdent ident(String name, long when) {
+        return new PersonIdent(name, name.toLowerCase(Locale.ROOT) + "@example.com", new Date(when), UTC);
+    }
+
+    private static RevCommit commit(Git git, String message, PersonIdent ident) throws Exception {
+        git.add().addFilepattern(".").call();
+        return git.commit().setMessage(message).setAuthor(ident).setCommitter(ident).call();
+    }
+
+    private static void write(File file, String content) throws Exception {
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -20,15 +20,27 @@ package org.apache.maven.doxia.scm.siterenderer;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.time.OffsetDateTime;
 import java.time.ZoneOffset;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
 import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.maven.doxia.siterenderer.ContextCustomizer;
 import org.apache.maven.doxia.siterenderer.DocumentRenderingContext;
 import org.apache.maven.doxia.siterenderer.SiteRenderingContext;
+import org.apache.maven.scm.ChangeFile;
+import org.apache.maven.scm.ChangeSet;
+import org.apache.maven.scm.ScmException;
+import org.apache.maven.scm.command.changelog.ChangeLogScmRequest;
+import org.apache.maven.scm.command.changelog.ChangeLogScmResult;
+import org.apache.maven.scm.command.changelog.ChangeLogSet;
 import org.apache.maven.scm.command.info.InfoItem;
 import org.apache.maven.scm.command.info.InfoScmResult;
 import org.apache.maven.scm.manager.ScmManager;
@@ -102,6 +114,324 @@ class ScmAttributesContextCustomizerTest {
         assertEquals(Date.from(modifiedDate.toInstant()), context.get("scmModifiedDate"));
     }
 
+    @Test
+    void lastModifiedDatePrefetched() throws Exception {
+        Mockito.when(scmManager.makeProviderScmRepository(siteDirectory)).thenReturn(Optional.of(scmRepository));
+        Mockito.when(scmManager.getProviderByRepository(scmRepository)).thenReturn(scmProvider);
+        Mockito.when(scmRepository.getProviderRepository()).thenReturn(scmProviderRepository);
+
+        InfoItem infoItem = new InfoItem();
+        OffsetDateTime modifiedDate = OffsetDateTime.of(2024, 6, 1, 12, 0, 0, 0, ZoneOffset.UTC);
+        infoItem.setLastChangedDateTime(modifiedDate);
+        Mockito.when(scmProvider.info(Mockito.any(), Mockito.any(), Mockito.any()))
+                .thenReturn(new InfoScmResult("", Collections.singletonList(infoItem)));
+
+        DocumentRenderingContext nonExisting =
+                new DocumentRenderingContext(siteDirectory, "markdown/non-existing.md", null);
+        contextCustomizer.prefetch(Arrays.asList(docContext, nonExisting), siteContext);
+        contextCustomizer.customizeContext(context, docContext, siteContext);
+        assertEquals(Date.from(modifiedDate.toInstant()), context.get("scmModifiedDate"));
+
+        // SCM info retrieved once, by the prefetch falling back to retrieval file by file without change log
+        Mockito.verify(scmProvider, Mockito.times(1)).info(Mockito.any(), Mockito.any(), Mockito.any());
+    }
+
+    @Test
+    void lastModifiedDateFromChangeLog() throws Exception {
+        Mockito.when(scmManager.makeProviderScmRepository(siteDirectory)).thenReturn(Optional.of(scmRepository));
+        Mockito.when(scmManager.getProviderByRepository(scmRepository)).thenReturn(scmProvider);
+
+        OffsetDateTime modifiedDate = OffsetDateTime.of(2024, 6, 1, 12, 0, 0, 0, ZoneOffset.UTC);
+        // change files are named relatively to the repository root
+        String siteDirectoryName = "doxia-site-scm-context/src/test/resources/site-last-modified/";
+        ChangeSet older = new ChangeSet(
+                new Date(0),
+                "older",
+                "someone",
+                Collections.singletonList(new ChangeFile(siteDirectoryName + "markdown/lastmodified.md.vm")));
+        ChangeSet last = new ChangeSet(
+                Date.from(modifiedDate.toInstant()),
+                "last",
+                "author",
+                Arrays.asList(
+                        new ChangeFile(siteDirectoryName + "markdown/lastmodified.md.vm"),
+                        new ChangeFile(siteDirectoryName + "site.xml")));
+        Mockito.when(scmProvider.changeLog(Mockito.any(ChangeLogScmRequest.class)))
+                .thenReturn(new ChangeLogScmResult("", new ChangeLogSet(Arrays.asList(older, last), null, null)));
+
+        DocumentRenderingContext other = new DocumentRenderingContext(siteDirectory, "site.xml", null);
+        contextCustomizer.prefetch(Arrays.asList(docContext, other), siteContext);
+        contextCustomizer.customizeContext(context, docContext, siteContext);
+        assertEquals(Date.from(modifiedDate.toInstant()), context.get("scmModifiedDate"));
+        assertEquals("author", context.get("scmModifiedAuthor"));
+
+        // SCM info of all documents retrieved with a single change log command
+        Mockito.verify(scmProvider, Mockito.times(1)).changeLog(Mockito.any(ChangeLogScmRequest.class));
+        Mockito.verify(scmProvider, Mockito.never()).info(Mockito.any(), Mockito.any(), Mockito.any());
+    }
+
+    @Test
+    void lastModifiedDateCached() throws Exception {
+        Mockito.when(scmManager.makeProviderScmRepository(siteDirectory)).thenReturn(Optional.of(scmRepository));
+        Mockito.when(scmManager.getProviderByRepository(scmRepository)).thenReturn(scmProvider);
+
+        String siteDirectoryName = "doxia-site-scm-context/src/test/resources/site-last-modified/";
+        ChangeSet first = new ChangeSet(
+                new Date(0),
+                "first",
+                "someone",
+                Arrays.asList(
+                        new ChangeFile(siteDirectoryName + "markdown/lastmodified.md.vm"),
+                        new ChangeFile(siteDirectoryName + "site.xml")));
+        first.setRevision("r1");
+        ChangeSet second = new ChangeSet(
+                new Date(1000),
+                "second",
+                "author",
+                Collections.singletonList(new ChangeFile(siteDirectoryName + "markdown/lastmodified.md.vm")));
+        second.setRevision("r2");
+        AtomicInteger headRevision = new AtomicInteger(1);
+        AtomicInteger fullChangeLogs = new AtomicInteger();
+        Mockito.when(scmProvider.changeLog(Mockito.any(ChangeLogScmRequest.class)))
+                .thenAnswer(invocation -> {
+                    ChangeLogScmRequest request = invocation.getArgument(0);
+                    if (request.getLimit() != null) {
+                        return changeLog(headRevision.get() == 1 ? first : second);
+                    } else if (request.getStartRevision() != null) {
+                        assertEquals("r1", request.getStartRevision().getName());
+                        return changeLog(second);
+                    }
+                    fullChangeLogs.incrementAndGet();
+                    return changeLog(first);
+                });
+
+        File cacheFile = new File("target/scm-info-cache.properties");
+        cacheFile.delete();
+        DocumentRenderingContext other = new DocumentRenderingContext(siteDirectory, "site.xml", null);
+        for (int i = 0; i < 2; i++) {
+            siteContext = new SiteRenderingContext();
+            siteContext.setRootDirectory(siteDirectory);
+            siteContext.putAttribute(ScmAttributesContextCustomizer.CACHE_FILE_ATTRIBUTE, cacheFile);
+            contextCustomizer.prefetch(Arrays.asList(docContext, other), siteContext);
+            contextCustomizer.customizeContext(context, docContext, siteContext);
+            assertEquals("someone", context.get("scmModifiedAuthor"));
+            contextCustomizer.afterSite(siteContext);
+        }
+        // the second rendering only checked the revision
+        assertTrue(cacheFile.isFile());
+        assertEquals(1, fullChangeLogs.get());
+
+        // incremental renderings only prefetching the modified documents keep the other documents cached
+        for (DocumentRenderingContext modified : Arrays.asList(docContext, other)) {
+            siteContext = new SiteRenderingContext();
+            siteContext.setRootDirectory(siteDirectory);
+            siteContext.putAttribute(ScmAttributesContextCustomizer.CACHE_FILE_ATTRIBUTE, cacheFile);
+            contextCustomizer.prefetch(Collections.singletonList(modified), siteContext);
+            Context modifiedContext = new VelocityContext();
+            contextCustomizer.customizeContext(modifiedContext, modified, siteContext);
+            assertEquals("someone", modifiedContext.get("scmModifiedAuthor"));
+            contextCustomizer.afterSite(siteContext);
+        }
+        assertEquals(1, fullChangeLogs.get());
+
+        // a new revision only touching one document
+        headRevision.set(2);
+        siteContext = new SiteRenderingContext();
+        siteContext.setRootDirectory(siteDirectory);
+        siteContext.putAttribute(ScmAttributesContextCustomizer.CACHE_FILE_ATTRIBUTE, cacheFile);
+        contextCustomizer.prefetch(Arrays.asList(docContext, other), siteContext);
+        contextCustomizer.customizeContext(context, docContext, siteContext);
+        assertEquals("author", context.get("scmModifiedAuthor"));
+        assertEquals(new Date(1000), context.get("scmModifiedDate"));
+        Context otherContext = new VelocityContext();
+        contextCustomizer.customizeContext(otherContext, other, siteContext);
+        assertEquals("someone", otherContext.get("scmModifiedAuthor"));
+        assertEquals(1, fullChangeLogs.get());
+        Mockito.verify(scmProvider, Mockito.never()).info(Mockito.any(), Mockito.any(), Mockito.any());
+    }
+
+    @Test
+    void revisionReadFromGitHead() throws Exception {
+        File workTree = new File("target/git-head-work-tree").getCanonicalFile();
+        File gitDirectory = new File(workTree, ".git");
+        new File(gitDirectory, "refs/heads").mkdirs();
+        Files.write(new File(gitDirectory, "HEAD").toPath(), "ref: refs/heads/main\n".getBytes(StandardCharsets.UTF_8));
+        File branch = new File(gitDirectory, "refs/heads/main");
+        Files.write(branch.toPath(), "1111111111111111111111111111111111111111\n".getBytes(StandardCharsets.UTF_8));
+        Files.write(new File(workTree, "index.md").toPath(), "# Index".getBytes(StandardCharsets.UTF_8));
+        Mockito.when(scmManager.makeProviderScmRepository(workTree)).thenReturn(Optional.of(scmRepository));
+        Mockito.when(scmManager.getProviderByRepository(scmRepository)).thenReturn(scmProvider);
+
+        ChangeSet first = new ChangeSet(
+                new Date(0), "first", "someone", Collections.singletonList(new ChangeFile("index.md")));
+        first.setRevision("r1");
+        Mockito.when(scmProvider.changeLog(Mockito.any(ChangeLogScmRequest.class))).thenReturn(changeLog(first));
+
+        File cacheFile = new File("target/git-head-scm-info-cache.properties");
+        cacheFile.delete();
+        DocumentRenderingContext index = new DocumentRenderingContext(workTree, "index.md", null);
+        for (int i = 0; i < 2; i++) {
+            siteContext = new SiteRenderingContext();
+            siteContext.setRootDirectory(workTree);
+            siteContext.putAttribute(ScmAttributesContextCustomizer.CACHE_FILE_ATTRIBUTE, cacheFile);
+            contextCustomizer.prefetch(Collections.singletonList(index), siteContext);
+            contextCustomizer.customizeContext(context, index, siteContext);
+            assertEquals("someone", context.get("scmModifiedAuthor"));
+            contextCustomizer.afterSite(siteContext);
+        }
+        // the second rendering ran no SCM command: the revision and the full change log of the first one
+        Mockito.verify(scmProvider, Mockito.times(2)).changeLog(Mockito.any(ChangeLogScmRequest.class));
+
+        // a new commit on the branch
+        Files.write(branch.toPath(), "2222222222222222222222222222222222222222\n".getBytes(StandardCharsets.UTF_8));
+        siteContext = new SiteRenderingContext();
+        siteContext.setRootDirectory(workTree);
+        siteContext.putAttribute(ScmAttributesContextCustomizer.CACHE_FILE_ATTRIBUTE, cacheFile);
+        contextCustomizer.prefetch(Collections.singletonList(index), siteContext);
+        contextCustomizer.customizeContext(context, index, siteContext);
+        contextCustomizer.afterSite(siteContext);
+        Mockito.verify(scmProvider, Mockito.times(3)).changeLog(Mockito.any(ChangeLogScmRequest.class));
+    }
+
+    private static ChangeLogScmResult changeLog(ChangeSet... changeSets) {
+        return new ChangeLogScmResult("", new ChangeLogSet(Arrays.asList(changeSets), null, null));
+    }
+
+    @Test
+    void repositoryLookedUpOncePerSite() throws Exception {
+        Mockito.when(scmManager.makeProviderScmRepository(siteDirectory)).thenReturn(Optional.empty());
+
+        contextCustomizer.beforeSite(siteContext);
+        contextCustomizer.customizeContext(context, docContext, siteContext);
+        contextCustomizer.customizeContext(context, docContext, siteContext);
+        Mockito.verify(scmManager, Mockito.times(1)).makeProviderScmRepository(siteDirectory);
+
+        // a directory outside of any SCM repository is looked up again by the next site
+        contextCustomizer.afterSite(siteContext);
+        contextCustomizer.customizeContext(context, docContext, siteContext);
+        Mockito.verify(scmManager, Mockito.times(2)).makeProviderScmRepository(siteDirectory);
+        assertFalse(context.containsKey("scmModifiedDate"));
+    }
+
+    @Test
+    void repositoryReusedByOtherModules() throws Exception {
+        Mockito.when(scmManager.makeProviderScmRepository(Mockito.any()))
+                .thenAnswer(invocation ->
+                        siteDirectory.equals(invocation.getArgument(0)) ? Optional.of(scmRepository) : Optional.empty());
+
+        for (String module : Arrays.asList("module1", "module2", "module1")) {
+            SiteRenderingContext moduleContext = new SiteRenderingContext();
+            moduleContext.setRootDirectory(new File(siteDirectory, module));
+            contextCustomizer.beforeSite(moduleContext);
+            contextCustomizer.afterSite(moduleContext);
+        }
+
+        // the modules reuse the repository of their parent directory, and only look up their own directory once
+        Mockito.verify(scmManager, Mockito.times(1)).makeProviderScmRepository(siteDirectory);
+        Mockito.verify(scmManager, Mockito.times(1)).makeProviderScmRepository(new File(siteDirectory, "module1"));
+        Mockito.verify(scmManager, Mockito.times(1)).makeProviderScmRepository(new File(siteDirectory, "module2"));
+    }
+
+    @Test
+    void repositoryLookedUpAgainWhenMetadataChanged() throws Exception {
+        File workTree = new File("target/scm-work-tree").getCanonicalFile();
+        File metadata = new File(workTree, ".git");
+        metadata.mkdirs();
+        File module = new File(workTree, "module");
+        Mockito.when(scmManager.makeProviderScmRepository(Mockito.any()))
+                .thenAnswer(invocation ->
+                        workTree.equals(invocation.getArgument(0)) ? Optional.of(scmRepository) : Optional.empty());
+
+        for (int i = 0; i < 2; i++) {
+            SiteRenderingContext moduleContext = new SiteRenderingContext();
+            moduleContext.setRootDirectory(module);
+            contextCustomizer.beforeSite(moduleContext);
+            contextCustomizer.afterSite(moduleContext);
+        }
+        Mockito.verify(scmManager, Mockito.times(1)).makeProviderScmRepository(workTree);
+
+        // the repository was removed or converted to another SCM
+        metadata.delete();
+        SiteRenderingContext moduleContext = new SiteRenderingContext();
+        moduleContext.setRootDirectory(module);
+        contextCustomizer.beforeSite(moduleContext);
+        contextCustomizer.afterSite(moduleContext);
+        Mockito.verify(scmManager, Mockito.times(2)).makeProviderScmRepository(workTree);
+        Mockito.verify(scmManager, Mockito.times(2)).makeProviderScmRepository(module);
+    }
+
+    @Test
+    void lastModifiedDateTimeout() throws Exception {
+        Mockito.when(scmManager.makeProviderScmRepository(siteDirectory)).thenReturn(Optional.of(scmRepository));
+        Mockito.when(scmManager.getProviderByRepository(scmRepository)).thenReturn(scmProvider);
+        Mockito.when(scmRepository.getProviderRepository()).thenReturn(scmProviderRepository);
+
+        // hung SCM command
+        CountDownLatch hung = new CountDownLatch(1);
+        Mockito.when(scmProvider.info(Mockito.any(), Mockito.any(), Mockito.any())).thenAnswer(invocation -> {
+            hung.await();
+            return null;
+        });
+
+        siteContext.putAttribute(ScmAttributesContextCustomizer.LOOKUP_TIMEOUT_ATTRIBUTE, 100);
+        try {
+            contextCustomizer.customizeContext(context, docContext, siteContext);
+            File inputFile = new File(siteDirectory, "markdown/lastmodified.md.vm");
+            assertEquals(new Date(inputFile.lastModified()), context.get("scmModifiedDate"));
+            assertFalse(context.containsKey("scmModifiedAuthor"));
+        } finally {
+            contextCustomizer.afterSite(siteContext);
+            hung.countDown();
+        }
+    }
+
+    @Test
+    void siteDeadline() throws Exception {
+        Mockito.when(scmManager.makeProviderScmRepository(siteDirectory)).thenReturn(Optional.of(scmRepository));
+        // the lookup may not even be started in time
+        Mockito.lenient().when(scmManager.getProviderByRepository(scmRepository)).thenReturn(scmProvider);
+        Mockito.lenient().when(scmRepository.getProviderRepository()).thenReturn(scmProviderRepository);
+        CountDownLatch hung = new CountDownLatch(1);
+        Mockito.lenient().when(scmProvider.info(Mockito.any(), Mockito.any(), Mockito.any())).thenAnswer(invocation -> {
+            hung.await();
+            return null;
+        });
+
+        // the site deadline is reached before the lookup timeout, whoever waits
+        siteContext.putAttribute(ScmAttributesContextCustomizer.TOTAL_TIMEOUT_ATTRIBUTE, 100);
+        try {
+            contextCustomizer.beforeSite(siteContext);
+            Thread.sleep(200);
+            long start = System.nanoTime();
+            contextCustomizer.customizeContext(context, docContext, siteContext);
+            assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+            File inputFile = new File(siteDirectory, "markdown/lastmodified.md.vm");
+            assertEquals(new Date(inputFile.lastModified()), context.get("scmModifiedDate"));
+        } finally {
+            contextCustomizer.afterSite(siteContext);
+            hung.countDown();
+        }
+    }
+
+    @Test
+    void generatedDocumentSkipped() throws Exception {
+        Mockito.when(scmManager.makeProviderScmRepository(siteDirectory)).thenReturn(Optional.of(scmRepository));
+        docContext = new DocumentRenderingContext(
+                siteDirectory,
+                "markdown/lastmodified.md.vm",
+                "markdown",
+                "md",
+                siteDirectory,
+                siteDirectory,
+                Collections.emptyList(),
+                null);
+
+        contextCustomizer.prefetch(Collections.singletonList(docContext), siteContext);
+        contextCustomizer.customizeContext(context, docContext, siteContext);
+        assertFalse(context.containsKey("scmModifiedDate"));
+        Mockito.verify(scmManager, Mockito.never()).getProviderByRepository(Mockito.any());
+    }
+
     @Test
     void lastModifiedDateOutsideRepo() throws Exception {
         Mockito.when(scmManager.makeProviderScmRepository(siteDirectory)).thenReturn(Optional.empty());
@@ -124,6 +454,23 @@ class ScmAttributesContextCustomizerTest {
         assertFalse(context.containsKey("scmModifiedDate"));
     }
 
+    @Test
+    void lastModifiedDateFailure() throws Exception {
+        Mockito.when(scmManager.makeProviderScmRepository(siteDirectory)).thenReturn(Optional.of(scmRepository));
+        Mockito.when(scmManager.getProviderByRepository(scmRepository)).thenReturn(scmProvider);
+        Mockito.when(scmRepository.getProviderRepository()).thenReturn(scmProviderRepository);
+
+        // unreachable SCM: the failure of each document is only reported once for the site
+        Mockito.when(scmProvider.info(Mockito.any(), Mockito.any(), Mockito.any()))
+                .thenThrow(new ScmException("unreachable"));
+        DocumentRenderingContext other = new DocumentRenderingContext(siteDirectory, "site.xml", null);
+        contextCustomizer.customizeContext(context, docContext, siteContext);
+        contextCustomizer.customizeContext(context, other, siteContext);
+        assertFalse(context.containsKey("scmModifiedDate"));
+        contextCustomizer.afterSite(siteContext);
+        Mockito.verify(scmProvider, Mockito.times(2)).info(Mockito.any(), Mockito.any(), Mockito.any());
+    }
+
     @Test
     void lastModifiedDateNonExisting() throws Exception {
         docContext = new DocumentRenderingContext(siteDirectory, "markdown/non-existing.md", null);